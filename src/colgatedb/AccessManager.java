@@ -7,6 +7,8 @@ import colgatedb.transactions.Permissions;
 import colgatedb.transactions.TransactionAbortedException;
 import colgatedb.transactions.TransactionId;
 
+import java.util.function.Function;
+
 /**
  * ColgateDB
  * @author Michael Hay mhay@colgate.edu
@@ -51,6 +53,21 @@ public interface AccessManager {
      */
     void unpinPage(TransactionId tid, Page page, boolean isDirty);
 
+    /**
+     * Applies reader to a page without leaving it pinned.  The transaction should hold a lock
+     * on the page.  The default implementation pins and unpins the page.
+     * @see BufferManager#readPage(PageId, PageMaker, Function)
+     */
+    default <T> T readPage(TransactionId tid, PageId pid, PageMaker pageMaker,
+                           Function<? super Page, ? extends T> reader) {
+        Page page = pinPage(tid, pid, pageMaker);
+        try {
+            return reader.apply(page);
+        } finally {
+            unpinPage(tid, page, false);
+        }
+    }
+
     /**
      * @see BufferManager#allocatePage(PageId)
      */
@@ -72,7 +89,9 @@ public interface AccessManager {
 
     /**
      * Set policy regarding dirty pages on commit.  If force is true, pages must
-     * be flushed to disk upon commit.  If false, dirty pages can remain in buffer pool.
+     * be flushed to disk upon commit.  If false, dirty pages can remain in buffer pool:
+     * the commit is made durable by the log alone, and the pages are written later by
+     * eviction or a checkpoint.  Recovery redoes committed changes in either case.
      * @param force true if force policy is desired, false otherwise
      */
     void setForce(boolean force);
@@ -1,5 +1,6 @@
 package colgatedb;
 
+import colgatedb.logging.LogFile;
 import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
@@ -7,6 +8,7 @@ import colgatedb.page.SlottedPage;
 import colgatedb.transactions.*;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * ColgateDB
@@ -26,7 +28,8 @@ import java.util.*;
 public class AccessManagerImpl implements AccessManager {
 
     private boolean force = true;  // indicates whether force policy should be used
-    private HashMap<TransactionId, List<PageId>> txnRecord;
+    // pin count of each page pinned by each transaction; guarded by itself
+    private HashMap<TransactionId, HashMap<PageId, Integer>> txnRecord;
     private LockManagerImpl lockManager;
     private BufferManager bufferManager;
     /**
@@ -35,7 +38,7 @@ public class AccessManagerImpl implements AccessManager {
      */
     public AccessManagerImpl(BufferManager bm) {
         lockManager= new LockManagerImpl();
-        txnRecord= new HashMap<TransactionId, List<PageId>>();
+        txnRecord= new HashMap<TransactionId, HashMap<PageId, Integer>>();
         bufferManager=bm;
         bm.evictDirty(true);
     }
@@ -58,13 +61,12 @@ public class AccessManagerImpl implements AccessManager {
     @Override
     public Page pinPage(TransactionId tid, PageId pid, PageMaker pageMaker) {
         synchronized (this.txnRecord) {
-            if (txnRecord.containsKey(tid)) {
-                txnRecord.get(tid).add(pid);
-            } else {
-                LinkedList<PageId> temp = new LinkedList<PageId>();
-                temp.add(pid);
-                txnRecord.put(tid, temp);
+            HashMap<PageId, Integer> pins = txnRecord.get(tid);
+            if (pins == null) {
+                pins = new HashMap<PageId, Integer>();
+                txnRecord.put(tid, pins);
             }
+            pins.merge(pid, 1, Integer::sum);
         }
         Page pinnedPage = bufferManager.pinPage(pid, pageMaker);
         return pinnedPage;
@@ -73,12 +75,34 @@ public class AccessManagerImpl implements AccessManager {
     @Override
     public void unpinPage(TransactionId tid, Page page, boolean isDirty) {
         synchronized (this.txnRecord) {
-            txnRecord.get(tid).remove(page.getId());
+            HashMap<PageId, Integer> pins = txnRecord.get(tid);
+            if (pins != null) {
+                pins.computeIfPresent(page.getId(), (pid, count) -> count == 1 ? null : count - 1);
+            }
         }
         if (isDirty){
-            Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+            // the page must be marked dirty before a checkpoint can follow its update record
+            LogFile log = Database.getLogFile();
+            log.beginUpdate();
+            try {
+                log.logWrite(tid, page.getBeforeImage(), page);
+                bufferManager.unpinPage(page.getId(), true);
+            } finally {
+                log.endUpdate();
+            }
+        } else {
+            bufferManager.unpinPage(page.getId(), false);
         }
-        bufferManager.unpinPage(page.getId(),isDirty);
+    }
+
+    /**
+     * Reads through the buffer manager, which may not pin the page at all.  Any pin it does take
+     * is dropped before this returns, so the transaction's pin record is left alone.
+     */
+    @Override
+    public <T> T readPage(TransactionId tid, PageId pid, PageMaker pageMaker,
+                          Function<? super Page, ? extends T> reader) {
+        return bufferManager.readPage(pid, pageMaker, reader);
     }
 
     @Override
@@ -93,29 +117,50 @@ public class AccessManagerImpl implements AccessManager {
 
     @Override
     public void transactionComplete(TransactionId tid, boolean commit) {
-        if (lockManager.getPagesForTid(tid) == null) {
+        HashMap<PageId, Integer> pins;
+        synchronized (this.txnRecord) {
+            pins = txnRecord.remove(tid);
+        }
+        if (pins == null) {
+            pins = new HashMap<PageId, Integer>();
+        }
+        List<PageId> lockedPages = lockManager.getPagesForTid(tid);
+        if (lockedPages == null) {
             return;
         } else {
-            Iterator<PageId> pageIdList = lockManager.getPagesForTid(tid).iterator();
-            while (pageIdList.hasNext()) {
-                PageId pid = pageIdList.next();
+            Set<Integer> restoredTables = new HashSet<Integer>();
+            for (PageId pid : lockedPages) {
                 if (bufferManager.inBufferPool(pid)) {
                     if (commit) {
-                        Database.getLogFile().force();
                         if (bufferManager.isDirty(pid) && force){bufferManager.flushPage(pid);}
                         if (bufferManager.isDirty(pid)) {bufferManager.getPage(pid).setBeforeImage();}
-                    } else {
-                        if (bufferManager.isDirty(pid)) {
-                            bufferManager.discardPage(pid);
-                        }
-                        while (txnRecord.get(tid).contains(pid)) {
-                            unpinPage(tid, bufferManager.getPage(pid), false);
+                    } else if (bufferManager.isDirty(pid) && holdsLock(tid, pid, Permissions.READ_WRITE)) {
+                        // only a writer can have dirtied the page.  Under NO-FORCE the page may also
+                        // hold committed changes that never reached disk; its before image is that
+                        // committed state, so install it after throwing the page away (after, so that
+                        // no write of the discarded page can land on top of it).
+                        Page before = force ? null : bufferManager.getPage(pid).getBeforeImage();
+                        bufferManager.discardPage(pid);
+                        pins.remove(pid);   // the discard dropped the pins
+                        if (before != null) {
+                            Database.getDiskManager().writePage(before);
+                            restoredTables.add(pid.getTableId());
                         }
                     }
                 }
             }
-            while(!lockManager.getPagesForTid(tid).isEmpty()){
-                releaseLock(tid,lockManager.getPagesForTid(tid).get(0));
+            // the buffer manager never sees these writes, so a checkpoint would not sync them
+            for (Integer tableid : restoredTables) {
+                Database.getDiskManager().sync(tableid);
+            }
+            // drop the pins the transaction still holds, once per pin
+            for (Map.Entry<PageId, Integer> entry : pins.entrySet()) {
+                for (int i = 0; i < entry.getValue() && bufferManager.inBufferPool(entry.getKey()); i++) {
+                    bufferManager.unpinPage(entry.getKey(), false);
+                }
+            }
+            for (PageId pid : lockedPages) {
+                releaseLock(tid, pid);
             }
         }
     }
@@ -123,7 +168,6 @@ public class AccessManagerImpl implements AccessManager {
 
     @Override
     public void setForce(boolean force) {
-        // you do NOT need to implement this for lab10.  this will be changed in a later lab.
         this.force=force;
     }
 }
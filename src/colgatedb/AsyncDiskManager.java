@@ -0,0 +1,414 @@
+package colgatedb;
+
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A DiskManagerImpl that performs page I/O on a small pool of I/O threads.
+ * <p>
+ * {@link #writePage(Page)} returns as soon as the page has been queued, so a caller such as
+ * the buffer manager evicting a dirty page no longer waits for the disk.  Queued writes are
+ * kept per table, ordered by page number, and drained elevator-style: each table is swept
+ * in increasing page order starting from where the previous sweep stopped.  A write to a page
+ * that already has a queued write simply replaces the queued image, so only the newest
+ * version of the page is written.
+ * <p>
+ * Reads see queued and in-flight writes: if a page has a pending write, it is served from
+ * that image rather than from disk.  Durability still requires {@link #sync(int)}, which
+ * first waits for every pending write to the table to finish.
+ * <p>
+ * A write that fails is kept, so reads keep seeing its image, until it is retried
+ * successfully or replaced by a later write of the same page.  Every {@link #sync(int)} of the
+ * table, {@link #flush()} and {@link #removeFileEntry(int)} first retries the failed writes it
+ * waits for, and throws if a retry fails again.  The caller that queued the write, e.g., a
+ * buffer manager evicting the page, has long moved on, so dropping the write would lose the
+ * newest image of the page.
+ * <p>
+ * {@link #readPageAsync(PageId, PageMaker)} and {@link #writePageAsync(Page)} expose the
+ * asynchronous operations directly to callers that want to overlap several I/Os.
+ */
+public class AsyncDiskManager extends DiskManagerImpl {
+
+    private static final int MAX_BATCH = 64;    // most pages written by one sweep step
+
+    private final ThreadPoolExecutor ioThreads;
+    private final Object queueLock = new Object();
+    // the following are guarded by queueLock
+    private final Map<Integer, TreeMap<Integer, PendingWrite>> queued = new HashMap<>(); // not yet started, per table
+    private final Map<PageId, PendingWrite> pending = new HashMap<>();  // newest queued, in-flight or failed write per page
+    private final Map<Integer, Integer> heads = new HashMap<>();        // elevator position per table
+    private final Set<Integer> draining = new HashSet<>();              // tables with a drain task running
+
+    /**
+     * @param pageSize size of a page in bytes
+     * @param numThreads number of I/O threads
+     */
+    public AsyncDiskManager(int pageSize, int numThreads) {
+        super(pageSize);
+        ioThreads = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "colgatedb-io");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ioThreads.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Read a page on an I/O thread.
+     * @return a future that completes with the page
+     */
+    public CompletableFuture<Page> readPageAsync(final PageId pid, final PageMaker pageMaker) {
+        byte[] image = pendingImage(pid);
+        if (image != null) {
+            return CompletableFuture.completedFuture(pageMaker.makePage(pid, image));
+        }
+        return CompletableFuture.supplyAsync(() -> readPage(pid, pageMaker), ioThreads);
+    }
+
+    /**
+     * Queue a page to be written.  The page's current contents are captured immediately, so
+     * the caller may keep modifying the page object.
+     * @return a future that completes once the page (or a newer image of it) has been written
+     */
+    public CompletableFuture<Void> writePageAsync(Page page) {
+        PageId pid = page.getId();
+        byte[] pageData = page.getPageData();
+        if (pageData.length != getPageSize()) {
+            throw new DiskManagerException("page size is invalid! Got " + pageData.length +
+                    " bytes, expected " + getPageSize());
+        }
+        if (!hasFileEntry(pid.getTableId())) {
+            throw new DiskManagerException("No record of this table id!");
+        }
+        synchronized (queueLock) {
+            TreeMap<Integer, PendingWrite> tableQueue = queued.get(pid.getTableId());
+            if (tableQueue == null) {
+                tableQueue = new TreeMap<>();
+                queued.put(pid.getTableId(), tableQueue);
+            }
+            PendingWrite write = tableQueue.get(pid.pageNumber());
+            if (write != null) {
+                write.image = new PageImage(pid, pageData);   // merge with the write already queued
+            } else {
+                write = new PendingWrite(new PageImage(pid, pageData));
+                tableQueue.put(pid.pageNumber(), write);
+            }
+            pending.put(pid, write);
+            startDrain(pid.getTableId());
+            return write.done;
+        }
+    }
+
+    @Override
+    public Page readPage(PageId pid, PageMaker pageMaker) {
+        byte[] image = pendingImage(pid);
+        if (image != null) {
+            return pageMaker.makePage(pid, image);
+        }
+        return super.readPage(pid, pageMaker);
+    }
+
+    @Override
+    public List<Page> readPages(List<PageId> pids, PageMaker pageMaker) {
+        Page[] pages = new Page[pids.size()];
+        List<PageId> fromDisk = new ArrayList<>();
+        List<Integer> fromDiskIndexes = new ArrayList<>();
+        for (int i = 0; i < pids.size(); i++) {
+            byte[] image = pendingImage(pids.get(i));
+            if (image != null) {
+                pages[i] = pageMaker.makePage(pids.get(i), image);
+            } else {
+                fromDisk.add(pids.get(i));
+                fromDiskIndexes.add(i);
+            }
+        }
+        List<Page> read = super.readPages(fromDisk, pageMaker);
+        for (int i = 0; i < read.size(); i++) {
+            pages[fromDiskIndexes.get(i)] = read.get(i);
+        }
+        return Arrays.asList(pages);
+    }
+
+    /**
+     * Queues the page and returns without waiting for the write.
+     */
+    @Override
+    public void writePage(Page page) {
+        writePageAsync(page);
+    }
+
+    @Override
+    public void writePages(List<Page> pages) {
+        for (Page page : pages) {
+            writePageAsync(page);
+        }
+    }
+
+    /**
+     * Waits for all pending writes to the table and then syncs it.
+     * @throws DiskManagerException if a write to the table failed and failed again when retried
+     */
+    @Override
+    public void sync(int tableid) {
+        awaitWrites(tableid);
+        super.sync(tableid);
+    }
+
+    @Override
+    public synchronized void removeFileEntry(int tableid) {
+        awaitWrites(tableid);
+        super.removeFileEntry(tableid);
+    }
+
+    /**
+     * Waits for every pending write, to any table, to finish.
+     * @throws DiskManagerException if a write failed and failed again when retried
+     */
+    public void flush() {
+        awaitWrites(null);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } finally {
+            super.close();
+            ioThreads.shutdown();
+        }
+    }
+
+    private byte[] pendingImage(PageId pid) {
+        synchronized (queueLock) {
+            PendingWrite write = pending.get(pid);
+            return write == null ? null : write.image.getPageData();
+        }
+    }
+
+    /*
+     * Waits for the pending writes to the table, or to every table if tableid is null.  Writes
+     * that have failed are queued again first.  A write that fails again stays pending, and the
+     * first such failure is thrown.
+     */
+    private void awaitWrites(Integer tableid) {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        synchronized (queueLock) {
+            for (Map.Entry<PageId, PendingWrite> entry : pending.entrySet()) {
+                if (tableid == null || entry.getKey().getTableId() == tableid) {
+                    PendingWrite write = entry.getValue();
+                    if (write.failed) {
+                        requeue(write);
+                    }
+                    writes.add(write.done);
+                }
+            }
+        }
+        DiskManagerException failure = null;
+        for (CompletableFuture<Void> done : writes) {
+            try {
+                await(done);
+            } catch (DiskManagerException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Runs on an I/O thread.  Repeatedly takes the next sweep of queued writes for the table and
+     * writes them with one vectored call, until the table's queue is empty.  Only one drain runs
+     * per table, which keeps writes to the same page in order.
+     */
+    private void drain(int tableid) {
+        while (true) {
+            List<PendingWrite> batch;
+            synchronized (queueLock) {
+                batch = nextBatch(tableid);
+                if (batch.isEmpty()) {
+                    draining.remove(tableid);
+                    return;
+                }
+            }
+            List<Page> images = new ArrayList<>(batch.size());
+            for (PendingWrite write : batch) {
+                images.add(write.image);
+            }
+            RuntimeException failure = null;
+            try {
+                super.writePages(images);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            // the futures are taken under the lock: once a write is marked failed, a retry may
+            // give it a new one
+            List<CompletableFuture<Void>> done = new ArrayList<>(batch.size());
+            synchronized (queueLock) {
+                for (PendingWrite write : batch) {
+                    done.add(write.done);
+                    if (failure == null) {
+                        pending.remove(write.image.getId(), write);
+                    } else if (pending.get(write.image.getId()) == write) {
+                        write.failed = true;    // kept until a retry succeeds or a newer write replaces it
+                    }
+                }
+            }
+            for (CompletableFuture<Void> future : done) {
+                if (failure == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /*
+     * Queues a failed write again, with a new future.  The page has no other queued write, since
+     * that write would have replaced this one in pending.  Caller must hold queueLock.
+     */
+    private void requeue(PendingWrite write) {
+        PageId pid = write.image.getId();
+        write.failed = false;
+        write.done = new CompletableFuture<>();
+        TreeMap<Integer, PendingWrite> tableQueue = queued.get(pid.getTableId());
+        if (tableQueue == null) {
+            tableQueue = new TreeMap<>();
+            queued.put(pid.getTableId(), tableQueue);
+        }
+        tableQueue.put(pid.pageNumber(), write);
+        startDrain(pid.getTableId());
+    }
+
+    /*
+     * Starts a drain task for the table unless one is already running.  Caller must hold queueLock.
+     */
+    private void startDrain(final int tableid) {
+        if (draining.add(tableid)) {
+            ioThreads.execute(() -> drain(tableid));
+        }
+    }
+
+    /*
+     * Removes up to MAX_BATCH queued writes, sweeping upward from the table's elevator head and
+     * wrapping around to the lowest page number.  Caller must hold queueLock.
+     */
+    private List<PendingWrite> nextBatch(int tableid) {
+        List<PendingWrite> batch = new ArrayList<>();
+        TreeMap<Integer, PendingWrite> tableQueue = queued.get(tableid);
+        if (tableQueue == null || tableQueue.isEmpty()) {
+            return batch;
+        }
+        Integer head = heads.get(tableid);
+        int start = head == null ? 0 : head;
+        takeWrites(tableQueue.tailMap(start, true), batch);
+        takeWrites(tableQueue.headMap(start, false), batch);
+        heads.put(tableid, batch.get(batch.size() - 1).image.getId().pageNumber() + 1);
+        return batch;
+    }
+
+    private static void takeWrites(Map<Integer, PendingWrite> writes, List<PendingWrite> batch) {
+        Iterator<PendingWrite> iter = writes.values().iterator();
+        while (iter.hasNext() && batch.size() < MAX_BATCH) {
+            batch.add(iter.next());
+            iter.remove();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DiskManagerException) {
+                throw (DiskManagerException) e.getCause();
+            }
+            throw new DiskManagerException(e);
+        }
+    }
+
+    /**
+     * A write waiting in the queue, in flight, or failed and waiting to be retried.  The image
+     * may be replaced while queued.  done and failed are guarded by queueLock.
+     */
+    private static class PendingWrite {
+        volatile PageImage image;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean failed;
+
+        PendingWrite(PageImage image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * A snapshot of the bytes of a page taken when its write was queued.
+     */
+    private static class PageImage implements Page {
+        private final PageId pid;
+        private final byte[] data;
+
+        PageImage(PageId pid, byte[] data) {
+            this.pid = pid;
+            this.data = data;
+        }
+
+        @Override
+        public PageId getId() {
+            return pid;
+        }
+
+        @Override
+        public byte[] getPageData() {
+            return data.clone();
+        }
+
+        @Override
+        public Page getBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
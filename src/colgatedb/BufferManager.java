@@ -4,6 +4,8 @@ import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
 
+import java.util.function.Function;
+
 /**
  * ColgateDB
  * @author Michael Hay mhay@colgate.edu
@@ -109,4 +111,37 @@ public interface BufferManager {
      */
     void discardPage(PageId pid);
 
+    /**
+     * Hints that pages of a table are about to be pinned one after another in increasing order,
+     * starting with start, as a sequential scan does.  A buffer manager may use this to read
+     * pages ahead.  The default implementation ignores the hint.
+     * @param start first page that will be pinned
+     * @param pageMaker object capable of building the table's pages from bytes
+     */
+    default void hintSequential(PageId start, PageMaker pageMaker) {
+    }
+
+    /**
+     * Applies reader to a page and returns its result, leaving the page's pin count as it was.
+     * A buffer manager may run reader on a resident page without pinning it at all and then
+     * check that the page did not change meanwhile.  Hence reader must only read the page,
+     * must not keep a reference to it, and may be run twice; any exception it throws on a page
+     * that changed under it is ignored.  The check relies on every change to a page being
+     * followed by unpinning it as dirty.
+     * <p>
+     * The default implementation pins the page, applies reader and unpins the page.
+     * @param pid pid of desired page
+     * @param pageMaker used to create Page object if it must be read from disk
+     * @param reader reads what the caller needs from the page
+     * @return reader's result
+     */
+    default <T> T readPage(PageId pid, PageMaker pageMaker, Function<? super Page, ? extends T> reader) {
+        Page page = pinPage(pid, pageMaker);
+        try {
+            return reader.apply(page);
+        } finally {
+            unpinPage(pid, false);
+        }
+    }
+
 }
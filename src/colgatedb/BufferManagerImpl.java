@@ -3,13 +3,27 @@ package colgatedb;
 import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
 
-import javax.xml.crypto.Data;
-import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * ColgateDB
@@ -27,372 +41,1713 @@ import java.util.Map;
  */
 public class BufferManagerImpl implements BufferManager {
 
-    private boolean allowEvictDirty = false;  // a flag indicating whether a dirty page is candidate for eviction
-    private int numPages;
-    private DiskManager dm;
-    private HashMap<PageId, Frame> frameMap;
-    private DoublyLinkedList clocklist;
+    private volatile boolean allowEvictDirty = false;  // a flag indicating whether a dirty page is candidate for eviction
+    private final DiskManager dm;
+    private volatile Frame[] frames;            // grows with resize, never shrinks
+    private final ConcurrentHashMap<PageId, Frame> pageTable;
+    private final Set<Integer> unsyncedTables;  // tables written to since their last sync
+
+    private final ReplacementPolicy policy;
+    private final ReplacementPolicy.Frames evictionView = new EvictionView();
+    // the free list is guarded by freeLatch, which is only ever held briefly
+    private final Object freeLatch = new Object();
+    private final ArrayDeque<Frame> freeFrames;
+    // frames taken out of use by shrinking the pool, and how many more are to be; guarded by freeLatch
+    private final ArrayDeque<Frame> retiredFrames = new ArrayDeque<Frame>();
+    private int framesToRetire;
+    private Thread shrinker;                    // guarded by this
+    // frames with changes not yet written, in the order they were first changed; guarded by dirtyLatch
+    private final Object dirtyLatch = new Object();
+    private final LinkedHashSet<Frame> dirtyFrames = new LinkedHashSet<Frame>();
+    // held by flushAllPages throughout, since two of them could each wait on a frame the other flushes
+    private final Object flushLatch = new Object();
+
+    private static final long CLEANER_INTERVAL_MS = 100;
+    private final Object cleanerSignal = new Object();
+    private Thread cleaner;                     // guarded by cleanerSignal
+    private volatile int cleanerTarget;         // written under cleanerSignal; 0 when no cleaner runs
+    private boolean cleanRequested;             // guarded by cleanerSignal
+
+    // counters reported by getStats
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unpinnedReads = new LongAdder();
+    private final LongAdder cleanEvictions = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder pinWaitNanos = new LongAdder();
+    private final MonitoringBean mbean = new MonitoringBean();
+    private volatile String mbeanName;      // the name mbean is registered under, if any
+
+    // threads waiting for a frame, first come first served; guarded by waitLatch
+    private final Object waitLatch = new Object();
+    private final ArrayDeque<FrameWaiter> waiters = new ArrayDeque<FrameWaiter>();
+    private volatile int waiterCount;           // written under waitLatch
+    private volatile long pinTimeoutNanos;      // 0: fail at once if no frame can be had
+
+    private volatile PageArena arena;           // page images of off-heap frames, null until first needed
+    private volatile boolean offHeap;
+
+    private static final int INITIAL_READ_AHEAD = 4;
+    private volatile int maxReadAhead;          // pages; 0 turns read-ahead off
+    private volatile ThreadPoolExecutor readAheadThreads;
+    // sequential streams of the calling thread, by table
+    private final ThreadLocal<Map<Integer, ReadAheadStream>> streams =
+            ThreadLocal.withInitial(HashMap::new);
 
     /**
-     * Construct a new buffer manager.
+     * Construct a new buffer manager with LRU replacement.
      *
      * @param numPages maximum size of the buffer pool
      * @param dm       the disk manager to call to read/write pages
      */
     public BufferManagerImpl(int numPages, DiskManager dm) {
-        this.numPages = numPages;
+        this(numPages, dm, new LruPolicy());
+    }
+
+    /**
+     * Construct a new buffer manager.
+     *
+     * @param numPages maximum size of the buffer pool
+     * @param dm       the disk manager to call to read/write pages
+     * @param policy   decides which page to evict; must not be shared with another buffer manager
+     */
+    public BufferManagerImpl(int numPages, DiskManager dm, ReplacementPolicy policy) {
         this.dm = dm;
-        frameMap = new HashMap<PageId, Frame>(numPages);
-        clocklist = new DoublyLinkedList(numPages);
+        this.policy = policy;
+        frames = new Frame[numPages];
+        freeFrames = new ArrayDeque<Frame>(numPages);
+        for (int i = 0; i < numPages; i++) {
+            frames[i] = new Frame(i);
+            freeFrames.add(frames[i]);
+        }
+        pageTable = new ConcurrentHashMap<PageId, Frame>(numPages);
+        unsyncedTables = ConcurrentHashMap.newKeySet();
+        policy.init(numPages);
     }
 
+    /*
+     * The buffer pool is a fixed array of frames plus a concurrent page table mapping each
+     * resident page to its frame, so no global lock is needed to find a page.
+     *
+     * Each frame's pin count is kept in an atomic word together with a generation number.  A
+     * count of -1 means that one thread has claimed the frame exclusively, to evict it or to
+     * discard it; nobody else may pin the frame until the claim ends.  Pinning is a
+     * compare-and-set from n >= 0 to n + 1, and eviction claims a frame with a compare-and-set
+     * from 0 to -1, so pinning and evicting can never both succeed.  Every claim starts a new
+     * generation of the frame.
+     *
+     * A hit therefore costs a hash lookup and a compare-and-set.  After pinning, the pinner
+     * re-checks that the frame still holds its page, since the frame may have been recycled
+     * between the lookup and the pin; if not, it drops its pin again.  discardPage is the one
+     * operation that claims a frame that is still pinned (the pins are simply dropped), and the
+     * generation keeps such a late pin drop from being applied to the frame's next life.
+     *
+     * A miss claims a frame (see claimFrame), then publishes the frame in the page table,
+     * pinned, before reading the page from disk without holding any lock.  Misses on different
+     * pages therefore read in parallel.  A thread that pins a page while it is still being read
+     * waits for the read to finish.  If two threads miss on the same page at once, the page
+     * table's putIfAbsent picks one reader and the other thread pins its frame instead.
+     *
+     * Which unpinned frame to evict is decided by the ReplacementPolicy (LRU unless another
+     * policy is given).  The policy is told about every pin, every pin count that drops to 0,
+     * and every page that enters or leaves the pool, and it does its own locking.  Free frames
+     * are kept on a list guarded by freeLatch.  No latch is ever held during I/O.
+     *
+     * A frame is dirty from the first unpin that changed it until its page leaves the pool, and
+     * this is what isDirty reports and what decides whether the page may be evicted when dirty
+     * pages may not be.  Separately, a frame is unwritten while it has changes that have not
+     * been handed to the disk manager; only unwritten frames need a write before eviction.
+     * Unwritten frames are kept in dirtyFrames, oldest first, for the cleaner.
+     *
+     * The optional cleaner thread (see startCleaner) does the writing ahead of demand: it
+     * evicts victims until the free list holds its target number of frames, writing dirty
+     * victims as it goes, and then writes the oldest unwritten frames so that later victims
+     * are clean.  A miss then finds a free frame and does not wait for a write.
+     *
+     * Each frame records a page LSN: the log's current LSN when the page was last unpinned
+     * dirty.  Because changes are logged before the page is unpinned, the log record of the
+     * latest change is at or before that LSN.  Before a page is written the log is forced up to
+     * its page LSN, which costs nothing if those records are durable already.  Clean victims
+     * are not written, so evicting them never forces the log.
+     *
+     * Read-ahead (see setReadAhead) follows each thread's accesses to each table; a thread stands
+     * in for a transaction here, since a transaction runs on one thread.  Once a thread pins two
+     * consecutive pages of a table, or hints that it will (hintSequential), the following pages
+     * get frames the same way a miss does, and are then read on a read-ahead thread.
+     * As in Linux, the window starts small and doubles each time the reader reaches the first
+     * page of the previous window, so one window is always in flight ahead of the reader.  Pages
+     * being read ahead are published pinned, like any miss, so a reader that gets there first
+     * waits for the read instead of issuing its own.
+     *
+     * The pool can be resized while in use (see resize).  Growing appends frames: the frame
+     * array is copied into a larger one, the policy and the arena are grown, and only then are
+     * the new frames put on the free list, so no index is ever handed out before everything
+     * that is indexed by it can take it.  Shrinking retires frames instead of removing them:
+     * a retired frame is free but not on the free list.  Free frames are retired at once, and
+     * the rest as they are freed, with a background thread evicting unpinned pages to free
+     * them.  The frame array therefore never shrinks, and retired frames are reused first when
+     * the pool grows again.
+     *
+     * With off-heap frames (see setOffHeap), each frame owns a slot of a PageArena.  The bytes
+     * of a page are copied to the slot as the page is read, and when the last pin of a clean
+     * page is dropped, the unpinner claims the frame and drops the Page object, leaving the frame
+     * with page == null and imageInArena set.  A later pin sees imageInArena and builds the Page
+     * from the slot instead of waiting for a read.  Dirty pages are never moved off the heap:
+     * their Page objects carry the before images that logging relies on, and a Page rebuilt
+     * from bytes would lose them.  Since dirty stays set until eviction, a slot is only read
+     * while it holds the image the page was read with.
+     */
+
     @Override
-    public synchronized Page pinPage(PageId pid, PageMaker pageMaker) {
-        Frame tempFrame= null;
-        if (frameMap.containsKey(pid)) {
-            tempFrame = frameMap.get(pid);
-            int pinCountRemoveFrame= tempFrame.getPinCount();
-            tempFrame.incrementPin();
-            if (pinCountRemoveFrame==0){
-                clocklist.removeFrame(tempFrame);
+    public Page pinPage(PageId pid, PageMaker pageMaker) {
+        while (true) {
+            Frame frame = pageTable.get(pid);
+            if (frame == null) {
+                Page page = load(pid, pageMaker);
+                if (page != null) {
+                    misses.increment();
+                    noteAccess(pid, pageMaker);
+                    return page;
+                }
+                continue;   // another thread started loading the page first; pin its frame
             }
-            return getPage(pid);
-        } else {
-            if (frameMap.size()==numPages){
-                Database.getLogFile().force();
-                evictPage();
+            long generation = tryPin(frame, pid);
+            if (generation >= 0) {
+                Page page = awaitLoaded(frame, pid, generation);
+                if (page != null) {
+                    hits.increment();
+                    policy.pinned(frame.index);
+                    noteAccess(pid, pageMaker);
+                    return page;
+                }
             }
-            Page newPage = dm.readPage(pid, pageMaker);
-            frameMap.put(pid, new Frame(newPage));
-            return newPage;
+            Thread.yield();     // frame is being evicted or discarded; look it up again
         }
-
     }
 
+    /**
+     * Reads a resident page that nobody has pinned without pinning it, seqlock style: the
+     * frame's state (generation and pin count) and its count of changes are read before reader
+     * runs and checked again afterwards.  A page that is pinned, being read, off the heap or
+     * not resident, and a page that changed while reader ran, are read through a pin instead.
+     */
     @Override
-    public synchronized void unpinPage(PageId pid, boolean isDirty) {
-        if (frameMap.containsKey(pid)) {
-            Frame tempFrame = frameMap.get(pid);
-            if (tempFrame.getPinCount() > 0) {
-                tempFrame.decrementPin();
-                tempFrame.setDirty(isDirty);
-                if (tempFrame.getPinCount()==0){
-                    //clocklist.moveFrameToHead(tempFrame);
-                    clocklist.addFrameToList(tempFrame);
+    public <T> T readPage(PageId pid, PageMaker pageMaker, Function<? super Page, ? extends T> reader) {
+        Frame frame = pageTable.get(pid);
+        if (frame != null) {
+            long changes = frame.changes.get();
+            long s = frame.unpinnedState();
+            Page page = frame.page;
+            if (s >= 0 && page != null && pid.equals(frame.pid)) {
+                T result = null;
+                RuntimeException failure = null;
+                try {
+                    result = reader.apply(page);
+                } catch (RuntimeException e) {
+                    failure = e;    // may come from reading a page that was being changed
+                }
+                if (frame.unchangedSince(s) && frame.changes.get() == changes) {
+                    hits.increment();
+                    unpinnedReads.increment();
+                    policy.accessed(frame.index);
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return result;
                 }
-            } else {
-                throw new BufferManagerException("Pincount of the page is already 0!");
             }
-        } else {
+        }
+        Page page = pinPage(pid, pageMaker);
+        try {
+            return reader.apply(page);
+        } finally {
+            unpinPage(pid, false);
+        }
+    }
+
+    @Override
+    public void unpinPage(PageId pid, boolean isDirty) {
+        Frame frame = pageTable.get(pid);
+        if (frame == null) {
             throw new BufferManagerException("Page associated with this pid is not in cache!");
         }
+        if (isDirty) {
+            frame.changes.incrementAndGet();    // before the unpin, for readers that do not pin
+            // the change was logged before the unpin, so it is covered by the log's current LSN
+            frame.pageLsn.accumulateAndGet(Database.getLogFile().getCurrentLsn(), Math::max);
+            frame.dirty = true;     // before the pin is released, so an evictor sees it
+            if (!frame.unwritten) {
+                frame.unwritten = true;
+                synchronized (dirtyLatch) {
+                    dirtyFrames.add(frame);
+                }
+            }
+        }
+        if (frame.unpin()) {
+            moveOffHeap(frame);
+            unpinned(frame);
+        }
     }
 
     @Override
-    public synchronized void flushPage(PageId pid) {
-        Frame tempFrame = frameMap.get(pid);
-        if (tempFrame.isDirty()) {
-            dm.writePage(tempFrame.getPage());
+    public void flushPage(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        if (frame != null) {
+            if (startFlush(frame, pid)) {
+                try {
+                    if (writeFrame(frame)) {
+                        flushes.increment();
+                    }
+                } finally {
+                    endFlush(frame);
+                }
+            }
+            syncTable(pid.getTableId());
         }
     }
 
     @Override
-    public synchronized void flushAllPages() {
-        for (PageId key : frameMap.keySet()) {
-            flushPage(key);
+    public void flushAllPages() {
+        synchronized (flushLatch) {
+            flushAllPagesLatched();
+        }
+    }
+
+    private void flushAllPagesLatched() {
+        // hand all unwritten pages to the disk manager at once so adjacent pages can share one write
+        List<Frame> flushing = new ArrayList<Frame>();
+        List<Page> dirtyPages = new ArrayList<Page>();
+        long maxLsn = 0;
+        try {
+            for (Map.Entry<PageId, Frame> entry : pageTable.entrySet()) {
+                Frame frame = entry.getValue();
+                if (!frame.unwritten || frame.page == null) {
+                    continue;
+                }
+                if (!startFlush(frame, entry.getKey())) {
+                    continue;
+                }
+                Page page = frame.page;
+                if (!frame.unwritten || page == null) {
+                    endFlush(frame);    // written by someone else meanwhile
+                    continue;
+                }
+                maxLsn = Math.max(maxLsn, frame.pageLsn.get());
+                frame.unwritten = false;    // before the write, so a change made during it sets it again
+                flushing.add(frame);
+                dirtyPages.add(page);
+                unsyncedTables.add(page.getId().getTableId());
+            }
+            try {
+                if (!dirtyPages.isEmpty()) {
+                    Database.getLogFile().force(maxLsn);
+                }
+                dm.writePages(dirtyPages);
+            } catch (RuntimeException e) {
+                for (Frame frame : flushing) {
+                    writeFailed(frame);
+                }
+                throw e;
+            }
+        } finally {
+            for (Frame frame : flushing) {
+                endFlush(frame);
+            }
+        }
+        flushes.add(dirtyPages.size());
+        for (Integer tableid : unsyncedTables) {
+            syncTable(tableid);
         }
     }
 
     @Override
-    public synchronized void evictDirty(boolean allowEvictDirty) {
+    public void evictDirty(boolean allowEvictDirty) {
         this.allowEvictDirty = allowEvictDirty;
+        if (allowEvictDirty && waiterCount > 0) {
+            synchronized (waitLatch) {      // dirty pages may be evictable now; let every waiter look
+                for (FrameWaiter waiter : waiters) {
+                    waiter.signal();
+                }
+                waiters.clear();
+                waiterCount = 0;
+            }
+        }
     }
 
     @Override
-    public synchronized void allocatePage(PageId pid) {
+    public void allocatePage(PageId pid) {
         dm.allocatePage(pid);
     }
 
     @Override
-    public synchronized boolean isDirty(PageId pid) {
-        if (frameMap.containsKey(pid)) {
-            return frameMap.get(pid).isDirty();
-        } else {
-            return false;
-        }
+    public boolean isDirty(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        return frame != null && frame.dirty;
     }
 
     @Override
-    public synchronized boolean inBufferPool(PageId pid) {
-        return frameMap.containsKey(pid);
+    public boolean inBufferPool(PageId pid) {
+        return pageTable.containsKey(pid);
     }
 
     @Override
-    public synchronized Page getPage(PageId pid) {
-        if (frameMap.containsKey(pid)) {
-            return frameMap.get(pid).getPage();
-        } else {
+    public Page getPage(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        Page page = frame == null ? null : rebuild(frame);
+        if (page == null) {
             throw new BufferManagerException("Page is not in Buffer Manager!");
         }
+        return page;
     }
 
     @Override
-    public synchronized void discardPage(PageId pid) {
-        frameMap.remove(pid);
+    public void discardPage(PageId pid) {
+        while (true) {
+            Frame frame = pageTable.get(pid);
+            if (frame == null) {
+                return;
+            }
+            // wait out evictions and reads in progress; any pins the page still has are dropped.
+            // The check and the claim are made under the frame's monitor, where a read publishes
+            // its page, so a frame is never claimed from under the thread reading into it.
+            boolean claimed;
+            synchronized (frame) {
+                claimed = pid.equals(frame.pid) && (frame.page != null || frame.imageInArena) &&
+                        frame.claimPinned();
+            }
+            if (claimed) {
+                awaitFlush(frame);
+                if (pageTable.remove(pid, frame)) {
+                    freeFrame(frame);
+                    synchronized (frame) {
+                        frame.notifyAll();  // wake pinners waiting on the frame; their pins are gone
+                    }
+                } else {
+                    // the frame was recycled for another page between the lookup and the claim
+                    frame.setPins(0);
+                    unpinned(frame);
+                }
+                return;
+            }
+            Thread.yield();
+        }
     }
 
+    /*
+     * Pins frame if it holds (or is loading) page pid.
+     * @return the generation in which the frame was pinned, or -1 if the frame is claimed or no
+     * longer holds pid
+     */
+    private long tryPin(Frame frame, PageId pid) {
+        long generation = frame.pin();
+        if (generation < 0) {
+            return -1;
+        }
+        if (pid.equals(frame.pid) && pageTable.get(pid) == frame) {
+            return generation;
+        }
+        release(frame, generation);     // recycled between lookup and pin
+        return -1;
+    }
 
     /*
-     * This function finds a candidate page for eviction upon request.
-     * I choose LRU as my eviction algorithm.
-     * My implementation of an efficient eviction strategy involves a doubly linked list with frame
-     * as node and a hashmap with pid as key and frame as value. The idea is to use doubly linked list
-     * for updating the queue and access the page through hashmap.
-     *
-     * Every page has a pid and when they are brought into buffer pool, they are kepted in a frame where
-     * additional information is kept. Pincount is larger than 0 when a page is pinned and 0 when it is not
-     * requested by any prgrame. We only keep pages with 0 pincount in the LRU queue: the page is put into
-     * the head of the queue when some program unpins the page and the pincount becomes 0. Obviously, when
-     * a page is in the queue but pinned again, we will remove it from the queue. Accessing a page in the
-     * buffer pool is always constant time because of hashmap.
-     *
-     * In pinpage(), if the requested page is already in the buffer pool, then we simply access the page
-     * with pid, update pincount and if pincount was 0 (meaning the the page
-     * was in LRU queue) remove it from the queue. It is clear that access through hashmap and update incount
-     * are both constant time operations. As for removing the frame from the list, we enjoy the benefit of
-     * having a doubly linked list instead of a normal one. Here we do not have to linearly iterate through
-     * all the nodes; we can simlpy connect the frames before and after the current frame through the prev and next
-     * pointers inside the frame. Thus it is constant time as well.
-     *
-     * If the page is not in the buffer pool, then we need to bring it in. Assume that allowEvictDirty is true,
-     * and there are frames in the queue.
-     * Then we simply choose the tail of the queue and evict this page because only pages with pincount 0 are
-     * allowed in the queue. This is constant time since there is a pointer to the tail of the queue.
-     *
-     * When allowEvictDirty is false, however, the runtime could be slightly slower since we have one queue
-     * for both dirty and clean pages. We have no other choice but iterate through all of them from the least
-     * recently used one (which is tail of the queue). The runtime is O(n) when every page in
-     * the queue is dirty or the only clean one is the head. Nonetheless, n is not necessarily always the size of the
-     * buffer pool since only pages with pincount 0 are allowed in the queue. The extreme case happens when all the
-     * pages in the buffer pool are dirty with pincount of 0. In the worst case, the algorithm will have a runtime linear
-     * to the size of the pool.
-     *
-     * Overall, the runtime should perform efficiently (constant time) when allowEvictDirty is true.
-     */
-    private synchronized void evictPage(){
-        if (clocklist.getCurrSize()==0){
-            throw new BufferManagerException("No unpinned page avaliable!");
-        }
-        Frame current= clocklist.getTail();
-        while (current!=null){
-            if (allowEvictDirty){
-                flushPage(clocklist.getTail().getPage().getId());
-                frameMap.remove(clocklist.getTail().getPage().getId());
-                clocklist.removeTail();
-                return;
+     * Drops a pin that the caller took in the given generation of the frame.
+     */
+    private void release(Frame frame, long generation) {
+        if (frame.release(generation)) {
+            moveOffHeap(frame);
+            unpinned(frame);
+        }
+    }
+
+    private Page awaitLoaded(Frame frame, PageId pid, long generation) {
+        if (frame.page == null && frame.imageInArena) {
+            rebuild(frame);
+        }
+        if (frame.page == null) {
+            long start = System.nanoTime();
+            synchronized (frame) {
+                while (frame.page == null && frame.failure == null && frame.generation() == generation) {
+                    try {
+                        frame.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        release(frame, generation);
+                        throw new BufferManagerException("Interrupted while waiting for page " + pid);
+                    }
+                }
+            }
+            pinWaitNanos.add(System.nanoTime() - start);
+        }
+        if (frame.failure != null) {
+            RuntimeException failure = frame.failure;
+            release(frame, generation);
+            throw failure;
+        }
+        Page page = frame.page;
+        // a discard may have dropped our pin and recycled the frame before we read the page
+        return frame.generation() == generation ? page : null;
+    }
+
+    /*
+     * Reads page pid into a newly claimed frame, pinned once, and returns the page.  Returns null
+     * if another thread published a frame for pid first.
+     */
+    private Page load(PageId pid, PageMaker pageMaker) {
+        Frame frame = claimFrame();
+        frame.assign(pid, pageMaker);
+        if (pageTable.putIfAbsent(pid, frame) != null) {
+            freeFrame(frame);   // still claimed, so it can go straight back
+            return null;
+        }
+        long generation = frame.setPins(1);
+        try {
+            ImageCapture capture = captureImages(pageMaker, Collections.singletonList(frame));
+            Page page = dm.readPage(pid, capture == null ? pageMaker : capture);
+            if (publish(frame, generation, page, capture != null && capture.captured(frame))) {
+                policy.loaded(frame.index, pid);
+            }
+            return page;
+        } catch (RuntimeException e) {
+            pageTable.remove(pid, frame);
+            publishFailure(frame, generation, e);
+            release(frame, generation);
+            throw e;
+        }
+    }
+
+    /*
+     * Makes a page that was read available to the threads waiting for it, unless the frame was
+     * claimed since the read began.  That happens only if more unpins than pins dropped the
+     * reader's pin; the frame may then hold another page already.  Claimers assign a frame
+     * under its monitor, so a frame is never reassigned between the check and the update.
+     * @return true if the page was published
+     */
+    private boolean publish(Frame frame, long generation, Page page, boolean imageInArena) {
+        synchronized (frame) {
+            if (frame.generation() != generation) {
+                return false;
+            }
+            frame.imageInArena = imageInArena;
+            frame.page = page;
+            frame.notifyAll();
+            return true;
+        }
+    }
+
+    private void publishFailure(Frame frame, long generation, RuntimeException failure) {
+        synchronized (frame) {
+            if (frame.generation() == generation) {
+                frame.failure = failure;
+                frame.notifyAll();
+            }
+        }
+    }
+
+    /*
+     * With off-heap frames, returns a page maker that wraps pageMaker and also copies the bytes
+     * of each page read into one of the given frames to the frame's arena slot.  Returns null
+     * otherwise.
+     */
+    private ImageCapture captureImages(PageMaker pageMaker, List<Frame> loading) {
+        PageArena arena = this.arena;
+        return arena == null || !offHeap ? null : new ImageCapture(arena, pageMaker, loading);
+    }
+
+    /*
+     * Called when the last pin of frame is dropped.  With off-heap frames, moves a clean page
+     * off the heap: its image is copied to the frame's arena slot, unless it is there already,
+     * and the Page object is dropped.  Does nothing if the frame is pinned or claimed meanwhile.
+     */
+    private void moveOffHeap(Frame frame) {
+        PageArena arena = this.arena;
+        if (arena == null || !offHeap || frame.dirty || frame.page == null || !frame.claimIfUnpinned()) {
+            return;
+        }
+        try {
+            Page page = frame.page;
+            if (page != null && !frame.dirty) {
+                if (!frame.imageInArena) {
+                    arena.write(frame.index, page.getPageData());
+                    frame.imageInArena = true;
+                }
+                frame.page = null;
+            }
+        } finally {
+            frame.setPins(0);
+        }
+    }
+
+    /*
+     * Builds the Page object of a page that was moved off the heap.
+     * @return the frame's page, or null if it is being read
+     */
+    private Page rebuild(Frame frame) {
+        synchronized (frame) {
+            Page page = frame.page;
+            if (page == null && frame.imageInArena) {
+                page = frame.pageMaker.makePage(frame.pid, arena.read(frame.index));
+                frame.page = page;
+                frame.notifyAll();
             }
-            else if (!allowEvictDirty){
-                if (current.isDirty()){
-                    current=current.getPrev();
+            return page;
+        }
+    }
+
+    /*
+     * Returns a frame claimed by the caller (pin count -1).  The frame is taken from the free
+     * list if possible.  Otherwise the replacement policy picks a victim: its page is written if
+     * dirty, and then it is removed from the page table.  If there is no victim, waits in line
+     * for one for up to the pin timeout.
+     */
+    private Frame claimFrame() {
+        Frame frame = takeFreeFrame();
+        if (frame != null) {
+            return frame;
+        }
+        requestCleaning();
+        long waitStart = 0;
+        FrameWaiter waiter = null;
+        try {
+            while (true) {
+                frame = evictVictim();
+                if (frame != null) {
+                    return frame;
                 }
-                else{
-                    flushPage(current.getPage().getId());
-                    frameMap.remove(current.getPage().getId());
-                    clocklist.removeFrame(current);
-                    return;
+                frame = takeFreeFrame();    // a page may have been discarded in the meantime
+                if (frame != null) {
+                    return frame;
+                }
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                if (anyClaimed()) {
+                    Thread.yield();     // a frame is being evicted, cleaned or loaded elsewhere; see how that ends
+                } else if (waiter == null) {
+                    if (pinTimeoutNanos == 0) {
+                        throw noVictim();
+                    }
+                    // join the line, then look once more: a frame released before we joined sent no signal
+                    waiter = new FrameWaiter(waitStart + pinTimeoutNanos);
+                    enqueue(waiter, false);
+                } else if (waiter.await()) {
+                    enqueue(waiter, true);  // keep our place in case another thread takes the frame first
+                } else {
+                    throw noVictim();
                 }
             }
+        } finally {
+            if (waiter != null) {
+                leave(waiter);
+            }
+            if (waitStart != 0) {
+                pinWaitNanos.add(System.nanoTime() - waitStart);
+            }
         }
-        throw new BufferManagerException("All frames are dirty! Enable AllowEvictDirty and try again!");
     }
-    /**
-     * A frame holds one page and maintains state about that page. It is modified to serves as a Node in
-     * doubly linked list and has prev and next.
+
+    /*
+     * Called whenever a frame may have become evictable.
+     */
+    private void unpinned(Frame frame) {
+        policy.unpinned(frame.index);
+        frameAvailable();
+    }
+
+    /*
+     * Wakes the first thread waiting for a frame, if any.
      */
-    private class Frame {
-        private Page page;
-        private int pinCount;
-        public boolean isDirty;
-        private Frame prev;
-        private Frame next;
+    private void frameAvailable() {
+        if (waiterCount == 0) {
+            return;     // the common case costs one volatile read
+        }
+        synchronized (waitLatch) {
+            FrameWaiter waiter = waiters.poll();
+            waiterCount = waiters.size();
+            if (waiter != null) {
+                waiter.signal();
+            }
+        }
+    }
 
-        public Frame(Page page) {
-            this.page = page;
-            this.pinCount = 1;   // assumes Frame is created on first pin -- feel free to modify as you see fit
-            this.isDirty = false;
+    private void enqueue(FrameWaiter waiter, boolean atFront) {
+        synchronized (waitLatch) {
+            waiter.signalled = false;
+            if (atFront) {
+                waiters.addFirst(waiter);
+            } else {
+                waiters.addLast(waiter);
+            }
+            waiterCount = waiters.size();
         }
+    }
 
-        public Frame getPrev() {
-            return prev;
+    /*
+     * Takes a waiter that stops waiting out of the line.  If it was woken but did not use the
+     * frame it was woken for, the next waiter is woken instead.
+     */
+    private void leave(FrameWaiter waiter) {
+        boolean unusedSignal;
+        synchronized (waitLatch) {
+            unusedSignal = !waiters.remove(waiter) && waiter.signalled;
+            waiterCount = waiters.size();
         }
+        if (unusedSignal) {
+            frameAvailable();
+        }
+    }
 
-        public void setPrev(Frame prev) {
-            this.prev = prev;
+    private boolean anyClaimed() {
+        for (Frame frame : frames) {
+            if (frame.pinCount() < 0) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        public Frame getNext() {
-            return next;
+    /*
+     * Claims the victim chosen by the replacement policy, writes its page if needed and removes
+     * it from the page table.
+     * @return the claimed frame, or null if the policy found no victim
+     */
+    private Frame evictVictim() {
+        int index = policy.evict(evictionView);
+        if (index < 0) {
+            return null;
+        }
+        Frame victim = frames[index];
+        PageId victimPid = victim.pid;
+        awaitFlush(victim);   // a flush may have cleared unwritten before its write is done
+        try {
+            (writeFrame(victim) ? dirtyEvictions : cleanEvictions).increment();
+        } catch (RuntimeException e) {
+            victim.setPins(0);
+            unpinned(victim);
+            throw e;
         }
+        pageTable.remove(victimPid, victim);
+        policy.removed(index);
+        forgetUnwritten(victim);
+        return victim;
+    }
 
-        public void setNext(Frame next) {
-            this.next = next;
+    private Frame takeFreeFrame() {
+        synchronized (freeLatch) {
+            for (int i = freeFrames.size(); i > 0; i--) {
+                Frame frame = freeFrames.poll();
+                if (frame.claimIfUnpinned()) {
+                    frame.free = false;
+                    if (freeFrames.size() < cleanerTarget) {
+                        requestCleaning();
+                    }
+                    return frame;
+                }
+                freeFrames.add(frame);  // a stale pin is being dropped; try the next one
+            }
+            return null;
         }
+    }
 
-        public int getPinCount() {
-            return pinCount;
+    private int freeFrameCount() {
+        synchronized (freeLatch) {
+            return freeFrames.size();
         }
+    }
 
-        public void incrementPin() {
-            this.pinCount++;
+    private BufferManagerException noVictim() {
+        for (Frame frame : frames) {
+            if (evictionView.isEvictable(frame.index) && frame.dirty && !allowEvictDirty) {
+                return new BufferManagerException("All frames are dirty! Enable AllowEvictDirty and try again!");
+            }
         }
+        return new BufferManagerException("No unpinned page avaliable!");
+    }
 
-        public void decrementPin() {
-            if (this.pinCount > 0) {
-                pinCount--;
+    /*
+     * Returns a claimed frame to the free list.
+     */
+    private void freeFrame(Frame frame) {
+        frame.pid = null;
+        frame.page = null;
+        frame.pageMaker = null;
+        frame.imageInArena = false;
+        frame.dirty = false;
+        forgetUnwritten(frame);
+        policy.removed(frame.index);
+        synchronized (freeLatch) {
+            frame.free = true;
+            frame.setPins(0);
+            if (framesToRetire > 0) {
+                framesToRetire--;
+                retiredFrames.add(frame);
+                return;
             }
+            freeFrames.add(frame);
         }
+        frameAvailable();
+    }
+
+    private void forgetUnwritten(Frame frame) {
+        frame.unwritten = false;
+        synchronized (dirtyLatch) {
+            dirtyFrames.remove(frame);
+        }
+    }
 
-        public void setDirty(boolean dirty) {
-            if (!this.isDirty) {
-                this.isDirty = dirty;
+    /*
+     * Writes the frame's page if it has unwritten changes, after forcing the log up to the page's
+     * LSN (write-ahead logging).  The caller must have claimed the frame or registered a flush of
+     * it (see startFlush), so that nobody drops the page before the write is done.  The write is
+     * not synced here: eviction only needs the page to reach the disk manager, and durability is
+     * provided by flushPage/flushAllPages (and, for evicted pages, by the log).
+     * @return true if the page was written
+     */
+    private boolean writeFrame(Frame frame) {
+        Page page = frame.page;
+        if (frame.unwritten && page != null) {
+            Database.getLogFile().force(frame.pageLsn.get());
+            frame.unwritten = false;    // before the write, so a change made during it sets it again
+            try {
+                dm.writePage(page);
+            } catch (RuntimeException e) {
+                writeFailed(frame);
+                throw e;
             }
+            unsyncedTables.add(page.getId().getTableId());
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Marks the frame unwritten again after its write failed.  The frame still holds the page:
+     * whoever wrote it has it claimed or has a flush registered, which holds off its eviction.
+     */
+    private void writeFailed(Frame frame) {
+        frame.unwritten = true;
+        synchronized (dirtyLatch) {
+            dirtyFrames.add(frame);
         }
+    }
 
-        public boolean isDirty() {
-            return this.isDirty;
+    /*
+     * Registers a flush of frame, which held page pid when it was looked up.  While the flush is
+     * registered, an eviction or discard that claims the frame waits for it (see awaitFlush)
+     * before dropping the page, so the page stays in the pool until its write is done.  Waits
+     * for any other flush of the frame to end, and out an eviction or discard that has the frame
+     * claimed already: an eviction writes the page itself, so once it is done the flush's sync
+     * covers that write.
+     * @return false if the frame no longer holds pid
+     */
+    private boolean startFlush(Frame frame, PageId pid) {
+        while (true) {
+            if (!frame.flushing.compareAndSet(false, true)) {
+                // one flush of a page at a time, so that an older image cannot reach the disk last
+                awaitFlush(frame);
+                continue;
+            }
+            // register first and check for a claim second; a claimer does the opposite, so
+            // at least one of the two sees the other
+            if (frame.pinCount() >= 0 && pid.equals(frame.pid) && pageTable.get(pid) == frame) {
+                return true;
+            }
+            endFlush(frame);
+            if (pageTable.get(pid) != frame) {
+                return false;
+            }
+            Thread.yield();
         }
+    }
 
-        public Page getPage() {
-            return this.page;
+    private void endFlush(Frame frame) {
+        frame.flushing.set(false);
+        synchronized (frame) {
+            frame.notifyAll();
         }
     }
 
     /*
-     * A sub class that implements an efficient queue for LRU
-     */
-    private class DoublyLinkedList {
-        private final int size;
-        private int currSize;
-        private Frame head;
-        private Frame tail;
-
-        public DoublyLinkedList(int size) {
-            this.size = size;
-            currSize = 0;
-        }
-
-        public Frame getTail() {
-            return tail;
-        }
-
-        public void setTail(Frame frame){
-            this.tail=frame;
-        }
-
-        public Frame addFrameToList(Frame frame) {
-            //Frame frame = new Frame(page);
-            if (head == null) {
-                head = frame;
-                tail = frame;
-                currSize = 1;
-                return frame;
-            } else if (currSize < size) {
-                currSize++;
-            } //else if (frame!=tail){
-              //  tail = tail.getPrev();
-              //  tail.setNext(null);
-            //}
-            frame.setNext(head);
-            head.setPrev(frame);
-            head = frame;
-            return frame;
+     * Waits until no flush is writing the page of frame.
+     */
+    private void awaitFlush(Frame frame) {
+        if (!frame.flushing.get()) {
+            return;
+        }
+        boolean interrupted = false;
+        synchronized (frame) {
+            while (frame.flushing.get()) {
+                try {
+                    frame.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;     // a claimer must not abandon its claim half way
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a background thread that writes dirty pages ahead of demand.  The cleaner evicts
+     * pages until at least targetFreeFrames frames are free, and then writes out unpinned pages
+     * with unwritten changes, oldest first, so that they can later be evicted without a write.
+     * Dirty pages are written only if dirty pages may be evicted (see {@link #evictDirty}).
+     * The cleaner wakes up whenever the free list falls below its target, and periodically.
+     * @param targetFreeFrames number of free frames to keep ready
+     */
+    public void startCleaner(int targetFreeFrames) {
+        synchronized (cleanerSignal) {
+            cleanerTarget = Math.min(targetFreeFrames, frames.length);
+            if (cleaner == null) {
+                cleaner = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runCleaner();
+                    }
+                }, "colgatedb-cleaner");
+                cleaner.setDaemon(true);
+                cleaner.start();
+            }
+            cleanerSignal.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the cleaner thread, if one is running, and waits for it to finish.
+     */
+    public void stopCleaner() {
+        Thread stopping;
+        synchronized (cleanerSignal) {
+            stopping = cleaner;
+            cleaner = null;
+            cleanerTarget = 0;
+            cleanerSignal.notifyAll();
+        }
+        if (stopping != null && stopping != Thread.currentThread()) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void requestCleaning() {
+        synchronized (cleanerSignal) {
+            if (cleaner != null) {
+                cleanRequested = true;
+                cleanerSignal.notifyAll();
+            }
+        }
+    }
+
+    private void runCleaner() {
+        while (true) {
+            int target;
+            synchronized (cleanerSignal) {
+                if (cleaner != Thread.currentThread()) {
+                    return;
+                }
+                if (!cleanRequested) {
+                    try {
+                        cleanerSignal.wait(CLEANER_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (cleaner != Thread.currentThread()) {
+                        return;
+                    }
+                }
+                cleanRequested = false;
+                target = cleanerTarget;
+            }
+            try {
+                clean(target);
+            } catch (RuntimeException e) {
+                // leave the failure for the next miss to run into; it reports it to its caller
+            }
         }
+    }
 
-        public void moveFrameToHead(Frame frame) {
-            if (frame == null || frame == head) {
+    /*
+     * One pass of the cleaner.
+     */
+    private void clean(int targetFreeFrames) {
+        while (freeFrameCount() < targetFreeFrames) {
+            Frame victim = evictVictim();
+            if (victim == null) {
+                break;
+            }
+            freeFrame(victim);
+        }
+        if (!allowEvictDirty) {
+            return;     // dirty pages may hold uncommitted changes that must not reach the disk
+        }
+        List<Frame> candidates = new ArrayList<Frame>();
+        synchronized (dirtyLatch) {
+            Iterator<Frame> iter = dirtyFrames.iterator();
+            while (iter.hasNext() && candidates.size() < Math.max(1, targetFreeFrames)) {
+                Frame frame = iter.next();
+                if (!frame.unwritten) {
+                    iter.remove();      // written by a flush since
+                } else if (frame.pinCount() == 0) {
+                    candidates.add(frame);
+                }
+            }
+        }
+        for (Frame frame : candidates) {
+            if (!evictionView.tryClaim(frame.index)) {
+                continue;   // pinned, free, or already evicted
+            }
+            try {
+                if (frame.flushing.get()) {
+                    continue;   // being written by a flush already
+                }
+                if (writeFrame(frame)) {
+                    flushes.increment();
+                }
+                if (!frame.unwritten) {
+                    synchronized (dirtyLatch) {
+                        dirtyFrames.remove(frame);
+                    }
+                }
+            } finally {
+                frame.setPins(0);
+                unpinned(frame);
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the pool's counters
+     */
+    public BufferPoolStats getStats() {
+        int pinned = 0;
+        int dirtyPages = 0;
+        for (Frame frame : frames) {
+            if (frame.pinCount() > 0) {
+                pinned++;
+            }
+            if (frame.unwritten) {
+                dirtyPages++;
+            }
+        }
+        return new BufferPoolStats(hits.sum(), misses.sum(), unpinnedReads.sum(), cleanEvictions.sum(), dirtyEvictions.sum(),
+                flushes.sum(), pinWaitNanos.sum(), getNumFrames(), pinned, dirtyPages);
+    }
+
+    /**
+     * Sets the pool's counters back to zero.
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        unpinnedReads.reset();
+        cleanEvictions.reset();
+        dirtyEvictions.reset();
+        flushes.reset();
+        pinWaitNanos.reset();
+    }
+
+    /**
+     * Publish the pool's counters as the MBean colgatedb:type=BufferPool,name=&lt;name&gt;,
+     * replacing any bean already registered under that name (e.g., by an earlier pool).
+     */
+    public void registerMBean(String name) {
+        mbeanName = name;
+        MBeans.register(mbean, "type=BufferPool,name=" + name);
+    }
+
+    /**
+     * Withdraw the MBean published by {@link #registerMBean(String)}, unless another pool has
+     * since been registered under the same name.
+     */
+    public void unregisterMBean() {
+        String name = mbeanName;
+        if (name != null) {
+            mbeanName = null;
+            MBeans.unregister(mbean, "type=BufferPool,name=" + name);
+        }
+    }
+
+    /**
+     * @return true if any page of the table is in the pool, or being read into it
+     */
+    boolean holdsPagesOf(int tableid) {
+        for (PageId pid : pageTable.keySet()) {
+            if (pid.getTableId() == tableid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of frames in the pool, not counting frames that a shrink is still to retire
+     */
+    public int getNumFrames() {
+        synchronized (freeLatch) {
+            return frames.length - retiredFrames.size() - framesToRetire;
+        }
+    }
+
+    /**
+     * Changes the number of frames of the pool while it is in use.
+     * <p>
+     * Growing adds free frames right away.  Shrinking retires free frames right away and the
+     * remaining frames as pages leave the pool: a background thread evicts unpinned pages until
+     * the pool is down to its new size.  Nobody waits for the shrink.  Pinned pages are never
+     * evicted for it, and dirty pages only if dirty pages may be evicted (see evictDirty), so
+     * a shrink can take until such pages are unpinned or written.
+     * <p>
+     * Retired frames are reused first if the pool grows again.  Their pages are gone, but the
+     * small frame objects and, with off-heap frames, their arena slots are kept.
+     * @param newNumPages new number of frames
+     * @throws BufferManagerException if newNumPages is less than 1
+     */
+    public synchronized void resize(int newNumPages) {
+        if (newNumPages < 1) {
+            throw new BufferManagerException("A buffer pool needs at least one frame, got " + newNumPages);
+        }
+        int grow = 0;
+        int woken = 0;      // frames that were added to the free list
+        synchronized (freeLatch) {
+            int delta = newNumPages - (frames.length - retiredFrames.size() - framesToRetire);
+            if (delta < 0) {
+                framesToRetire -= delta;
+                for (int i = freeFrames.size(); i > 0 && framesToRetire > 0; i--) {
+                    Frame frame = freeFrames.poll();
+                    if (frame.claimIfUnpinned()) {
+                        frame.setPins(0);
+                        framesToRetire--;
+                        retiredFrames.add(frame);
+                    } else {
+                        freeFrames.add(frame);  // a stale pin is being dropped
+                    }
+                }
+            } else if (delta > 0) {
+                int cancelled = Math.min(framesToRetire, delta);
+                framesToRetire -= cancelled;
+                delta -= cancelled;
+                while (delta > 0 && !retiredFrames.isEmpty()) {
+                    freeFrames.add(retiredFrames.poll());
+                    delta--;
+                    woken++;
+                }
+                grow = delta;
+            }
+        }
+        if (grow > 0) {
+            Frame[] grown = Arrays.copyOf(frames, frames.length + grow);
+            for (int i = frames.length; i < grown.length; i++) {
+                grown[i] = new Frame(i);
+            }
+            if (arena != null) {
+                arena = arena.grow(grown.length);
+            }
+            policy.resize(grown.length);
+            frames = grown;
+            synchronized (freeLatch) {
+                for (int i = grown.length - grow; i < grown.length; i++) {
+                    freeFrames.add(grown[i]);
+                    woken++;
+                }
+            }
+        }
+        for (int i = 0; i < woken; i++) {
+            frameAvailable();
+        }
+        synchronized (freeLatch) {
+            if (framesToRetire == 0 || shrinker != null) {
                 return;
             }
+        }
+        shrinker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shrink();
+            }
+        }, "colgatedb-shrinker");
+        shrinker.setDaemon(true);
+        shrinker.start();
+    }
 
-            if (frame == tail) {
-                tail = tail.getPrev();
-                tail.setNext(null);
+    /*
+     * Runs on the shrinker thread.  Evicts pages until the frames to retire are retired; freeFrame
+     * retires the victims.
+     */
+    private void shrink() {
+        while (true) {
+            synchronized (this) {
+                synchronized (freeLatch) {
+                    if (framesToRetire == 0) {
+                        shrinker = null;
+                        return;
+                    }
+                }
+            }
+            Frame victim = null;
+            try {
+                victim = evictVictim();
+            } catch (RuntimeException e) {
+                // the write of a dirty victim failed; try again later
+            }
+            if (victim != null) {
+                freeFrame(victim);
+                continue;
+            }
+            try {
+                Thread.sleep(CLEANER_INTERVAL_MS);  // every page is pinned or may not be evicted
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    shrinker = null;
+                }
+                return;
             }
+        }
+    }
+
+    /**
+     * Sets how long a pin waits for a frame when every frame is pinned (or dirty, if dirty pages
+     * may not be evicted).  Waiting threads are served in the order they started to wait: each
+     * frame that becomes available wakes the first waiter only.  A pin that times out throws
+     * BufferManagerException as it would without waiting.  The default is not to wait.
+     * @param millis longest wait in milliseconds; 0 means do not wait
+     */
+    public void setPinTimeout(long millis) {
+        pinTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
 
-            Frame prev = frame.getPrev();
-            Frame next = frame.getNext();
-            prev.setNext(next);
+    /**
+     * @return how long a pin waits for a frame, in milliseconds
+     */
+    public long getPinTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(pinTimeoutNanos);
+    }
+
+    /**
+     * Turns off-heap frames on or off.  With off-heap frames, a clean page that is not pinned is
+     * kept only as bytes in a direct-memory arena with one slot per frame, and a new Page object
+     * is built from those bytes whenever the page is pinned again.  Only pinned and dirty pages
+     * stay on the heap, so even a very large pool adds little work for the garbage collector.
+     * The price is the cost of building a Page object on every hit of an unpinned page.
+     * <p>
+     * Pages move off the heap as they are unpinned.  When off-heap frames are turned off again,
+     * pages already off the heap return to it as they are pinned.
+     */
+    public void setOffHeap(boolean offHeap) {
+        if (offHeap && arena == null) {
+            synchronized (this) {
+                if (arena == null) {
+                    arena = new PageArena(frames.length, dm.getPageSize());
+                }
+            }
+        }
+        this.offHeap = offHeap;
+    }
 
-            if (next != null) {
-                next.setPrev(prev);
+    /**
+     * Turns sequential read-ahead on or off.
+     * @param maxPages largest number of pages read ahead at once; it is also capped at a quarter
+     *                 of the pool.  0 turns read-ahead off.
+     */
+    public void setReadAhead(int maxPages) {
+        if (maxPages > 0 && readAheadThreads == null) {
+            synchronized (this) {
+                if (readAheadThreads == null) {
+                    ThreadPoolExecutor threads = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "colgatedb-readahead");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                    threads.allowCoreThreadTimeOut(true);
+                    readAheadThreads = threads;
+                }
             }
+        }
+        maxReadAhead = Math.max(0, Math.min(maxPages, frames.length / 4));
+    }
+
+    /**
+     * Starts reading ahead from start right away, without waiting to see two sequential pins.
+     */
+    @Override
+    public void hintSequential(PageId start, PageMaker pageMaker) {
+        if (maxReadAhead == 0) {
+            return;
+        }
+        ReadAheadStream stream = stream(start.getTableId());
+        stream.restart(start.pageNumber() - 1);
+        readAhead(stream, start.getTableId(), start.pageNumber() - 1, pageMaker);
+    }
+
+    private ReadAheadStream stream(int tableid) {
+        Map<Integer, ReadAheadStream> tableStreams = streams.get();
+        ReadAheadStream stream = tableStreams.get(tableid);
+        if (stream == null) {
+            stream = new ReadAheadStream();
+            tableStreams.put(tableid, stream);
+        }
+        return stream;
+    }
+
+    /*
+     * Called after every successful pin to detect sequential access.
+     */
+    private void noteAccess(PageId pid, PageMaker pageMaker) {
+        if (maxReadAhead == 0) {
+            return;
+        }
+        ReadAheadStream stream = stream(pid.getTableId());
+        int pageno = pid.pageNumber();
+        if (pageno == stream.last) {
+            return;     // the same page again
+        }
+        if (pageno != stream.last + 1) {
+            stream.restart(pageno);
+            return;
+        }
+        stream.last = pageno;
+        if (stream.window == 0 || pageno >= stream.marker) {
+            readAhead(stream, pid.getTableId(), pageno, pageMaker);
+        }
+    }
 
-            frame.setPrev(null);
-            frame.setNext(head);
-            head.setPrev(frame);
-            head = frame;
+    /*
+     * Grows the stream's window and queues the read of the next window after pageno.
+     */
+    private void readAhead(ReadAheadStream stream, final int tableid, int pageno, final PageMaker pageMaker) {
+        int max = Math.max(1, maxReadAhead);
+        stream.window = stream.window == 0 ? Math.min(INITIAL_READ_AHEAD, max) : Math.min(2 * stream.window, max);
+        final int from = Math.max(stream.next, pageno + 1);
+        final int to = (int) Math.min((long) from + stream.window, dm.getNumPages(tableid));
+        stream.marker = from;
+        stream.next = Math.max(stream.next, to);
+        ThreadPoolExecutor threads = readAheadThreads;
+        if (from >= to || threads == null) {
+            return;
         }
+        // frames are claimed and published here, so the reader cannot overtake the read-ahead and
+        // load the same pages itself; only the disk read is left to the read-ahead thread
+        final ReadAheadBatch batch = reserve(tableid, from, to, pageMaker);
+        threads.execute(new Runnable() {
+            @Override
+            public void run() {
+                read(batch, pageMaker);
+            }
+        });
+    }
 
-        public void removeTail(){
-            if (this.currSize>1) {
-                Frame newtail = this.tail.getPrev();
-                newtail.setNext(null);
-                this.tail = newtail;
+    /*
+     * Publishes loading frames, pinned once, for the pages from..to-1 that are not in the pool
+     * yet.  Frames are obtained as for a miss.  Stops early if no frame can be had.
+     */
+    private ReadAheadBatch reserve(int tableid, int from, int to, PageMaker pageMaker) {
+        ReadAheadBatch batch = new ReadAheadBatch();
+        for (int pageno = from; pageno < to; pageno++) {
+            PageId pid = new SimplePageId(tableid, pageno);
+            if (pageTable.containsKey(pid)) {
+                continue;
+            }
+            Frame frame;
+            try {
+                frame = takeFreeFrame();
+                if (frame == null) {
+                    frame = evictVictim();
+                }
+            } catch (RuntimeException e) {
+                frame = null;
+            }
+            if (frame == null) {
+                break;
             }
-            else{
-                this.setCurrSize(0);
-                this.setHead(null);
-                this.setTail(null);
+            frame.assign(pid, pageMaker);
+            if (pageTable.putIfAbsent(pid, frame) != null) {
+                freeFrame(frame);   // a reader got there first
+                continue;
             }
+            batch.generations.add(frame.setPins(1));
+            batch.frames.add(frame);
+            batch.pids.add(pid);
         }
+        return batch;
+    }
 
-        public void removeFrame(Frame current)
-        {
-            if (current.getNext() ==  null &&current.getPrev() == null){
-                this.setTail(null);
-                this.setHead(null);
-                //this.setCurrSize(0);
+    /*
+     * Runs on a read-ahead thread.  Reads every reserved page of the batch with one call to the
+     * disk manager and unpins them.
+     */
+    private void read(ReadAheadBatch batch, PageMaker pageMaker) {
+        if (batch.frames.isEmpty()) {
+            return;
+        }
+        List<Page> pages;
+        ImageCapture capture = captureImages(pageMaker, batch.frames);
+        try {
+            pages = dm.readPages(batch.pids, capture == null ? pageMaker : capture);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < batch.frames.size(); i++) {
+                Frame frame = batch.frames.get(i);
+                pageTable.remove(batch.pids.get(i), frame);
+                publishFailure(frame, batch.generations.get(i), e);
+                release(frame, batch.generations.get(i));
             }
-            else if(current.getNext() ==  null)
-            {
-                Frame previous = current.getPrev();
-                previous.setNext(null);
-                current.setPrev(null);
-                tail = previous;
+            return;
+        }
+        for (int i = 0; i < batch.frames.size(); i++) {
+            Frame frame = batch.frames.get(i);
+            if (publish(frame, batch.generations.get(i), pages.get(i), capture != null && capture.captured(frame))) {
+                policy.loaded(frame.index, batch.pids.get(i));
             }
-            else if (current.getPrev() == null)
-            {
-                Frame next = current.getNext();
-                next.setPrev(null);
-                current.setNext(null);
+            release(frame, batch.generations.get(i));
+        }
+    }
+
+    private void syncTable(int tableid) {
+        if (unsyncedTables.remove(tableid)) {
+            dm.sync(tableid);
+        }
+    }
+
+    /**
+     * One thread's sequential progress through one table.  Only touched by that thread.
+     */
+    private static class ReadAheadStream {
+        int last = -2;      // page pinned last
+        int window;         // size of the last read-ahead, 0 if none yet
+        int marker;         // reaching this page triggers the next read-ahead
+        int next;           // first page not read ahead yet
+
+        void restart(int pageno) {
+            last = pageno;
+            window = 0;
+            marker = Integer.MAX_VALUE;
+            next = pageno + 1;
+        }
+    }
+
+    /**
+     * The pool as seen through JMX.
+     */
+    private class MonitoringBean implements BufferPoolMXBean {
+        @Override
+        public long getHits() {
+            return hits.sum();
+        }
+
+        @Override
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        @Override
+        public long getUnpinnedReads() {
+            return unpinnedReads.sum();
+        }
+
+        @Override
+        public double getHitRatio() {
+            return getStats().getHitRatio();
+        }
+
+        @Override
+        public long getCleanEvictions() {
+            return cleanEvictions.sum();
+        }
+
+        @Override
+        public long getDirtyEvictions() {
+            return dirtyEvictions.sum();
+        }
+
+        @Override
+        public long getFlushes() {
+            return flushes.sum();
+        }
+
+        @Override
+        public long getPinWaitMicros() {
+            return pinWaitNanos.sum() / 1000;
+        }
+
+        @Override
+        public int getFrames() {
+            return getNumFrames();
+        }
+
+        @Override
+        public int getPinnedFrames() {
+            return getStats().getPinnedFrames();
+        }
+
+        @Override
+        public int getDirtyPages() {
+            return getStats().getDirtyPages();
+        }
+
+        @Override
+        public void reset() {
+            resetStats();
+        }
+    }
+
+    /**
+     * A thread waiting for a frame.
+     */
+    private static class FrameWaiter {
+        private final long deadline;    // System.nanoTime() when the wait times out
+        boolean signalled;              // guarded by this, and set to false under waitLatch
+
+        FrameWaiter(long deadline) {
+            this.deadline = deadline;
+        }
+
+        synchronized void signal() {
+            signalled = true;
+            notify();
+        }
+
+        /**
+         * Waits to be signalled.
+         * @return false if the wait timed out
+         * @throws BufferManagerException if interrupted
+         */
+        synchronized boolean await() {
+            while (!signalled) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BufferManagerException("Interrupted while waiting for a frame");
+                }
             }
-            else
-            {
-                Frame next = current.getNext();
-                Frame previous = current.getPrev();
-                previous.setNext(next);
-                next.setPrev(previous);
-                current.setPrev(null);
-                current.setNext(null);
+            return true;
+        }
+    }
+
+    /**
+     * Copies the bytes of pages being read to the arena slots of their frames.  The frames'
+     * imageInArena flags are set by the reader once it publishes the pages, so that nobody
+     * rebuilds a page from its slot while it is still being read.
+     */
+    private static class ImageCapture implements PageMaker {
+        private final PageArena arena;
+        private final PageMaker pageMaker;
+        private final List<Frame> loading;
+        private final Set<Frame> captured = ConcurrentHashMap.newKeySet();  // a disk manager may read in parallel
+
+        ImageCapture(PageArena arena, PageMaker pageMaker, List<Frame> loading) {
+            this.arena = arena;
+            this.pageMaker = pageMaker;
+            this.loading = loading;
+        }
+
+        boolean captured(Frame frame) {
+            return captured.contains(frame);
+        }
+
+        @Override
+        public Page makePage(PageId pid, byte[] bytes) {
+            for (Frame frame : loading) {
+                if (pid.equals(frame.pid)) {
+                    arena.write(frame.index, bytes);
+                    captured.add(frame);
+                    break;
+                }
             }
-            currSize = size - 1;
-            //return current;
+            return pageMaker.makePage(pid, bytes);
         }
 
-        public int getCurrSize() {
-            return currSize;
+        @Override
+        public Page makePage(PageId pid) {
+            return pageMaker.makePage(pid);
         }
+    }
 
-        public void setCurrSize(int currSize) {
-            this.currSize = currSize;
+    /**
+     * Pages being read ahead together.
+     */
+    private static class ReadAheadBatch {
+        final List<Frame> frames = new ArrayList<Frame>();
+        final List<Long> generations = new ArrayList<Long>();     // of the pins held by the batch
+        final List<PageId> pids = new ArrayList<PageId>();
+    }
+
+    /**
+     * What the replacement policy may see of the frames.
+     */
+    private class EvictionView implements ReplacementPolicy.Frames {
+        @Override
+        public boolean isEvictable(int index) {
+            Frame frame = frames[index];
+            return frame.pinCount() == 0 && !frame.free;
         }
 
-        public Frame getHead() {
-            return head;
+        @Override
+        public boolean tryClaim(int index) {
+            Frame frame = frames[index];
+            if (!isCandidate(frame) || !frame.claimIfUnpinned()) {
+                return false;
+            }
+            if (!isCandidate(frame)) {
+                frame.setPins(0);   // freed or dirtied between the check and the claim
+                return false;
+            }
+            return true;
         }
 
-        public void setHead(Frame head) {
-            this.head = head;
+        private boolean isCandidate(Frame frame) {
+            return !frame.free && (allowEvictDirty || !frame.dirty);
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * A frame holds one page and maintains state about that page.
+     */
+    private static class Frame {
+        // high 32 bits: generation, bumped whenever the frame is claimed; low 32 bits: pin count, -1 while claimed
+        private final AtomicLong state = new AtomicLong(0);
+        volatile PageId pid;        // page held or being loaded, null if empty
+        volatile Page page;         // null while the page is being read or while it is off the heap
+        volatile PageMaker pageMaker;       // builds the page from its bytes
+        volatile boolean imageInArena;      // the frame's arena slot holds the page's bytes
+        volatile boolean dirty;     // stays set until the page is evicted or discarded
+        volatile boolean unwritten; // changed since the page was last handed to the disk manager
+        final AtomicLong pageLsn = new AtomicLong();    // covers the last logged change to the page
+        final AtomicLong changes = new AtomicLong();    // bumped by every dirty unpin
+        final AtomicBoolean flushing = new AtomicBoolean();    // a flush is writing the page
+        volatile RuntimeException failure;  // set if reading the page failed
+        volatile boolean free = true;       // on the free list; only changed under freeLatch
+        final int index;                    // position in frames
+
+        Frame(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Prepares a claimed frame to hold page pid, which is about to be read.
+         */
+        synchronized void assign(PageId pid, PageMaker pageMaker) {
+            this.pid = pid;
+            this.pageMaker = pageMaker;
+            page = null;
+            imageInArena = false;
+            dirty = false;
+            unwritten = false;
+            pageLsn.set(0);
+            failure = null;
+        }
+
+        int pinCount() {
+            return (int) state.get();
+        }
+
+        long generation() {
+            return state.get() >>> 32;
+        }
+
+        /**
+         * @return the generation that was pinned, or -1 if the frame is claimed
+         */
+        long pin() {
+            while (true) {
+                long s = state.get();
+                if ((int) s < 0) {
+                    return -1;
+                }
+                if (state.compareAndSet(s, s + 1)) {
+                    return s >>> 32;
+                }
+            }
+        }
+
+        /**
+         * @return true if this dropped the last pin
+         * @throws BufferManagerException if the frame is not pinned
+         */
+        boolean unpin() {
+            while (true) {
+                long s = state.get();
+                int pins = (int) s;
+                if (pins <= 0) {
+                    throw new BufferManagerException("Pincount of the page is already 0!");
+                }
+                if (state.compareAndSet(s, s - 1)) {
+                    return pins == 1;
+                }
+            }
+        }
+
+        /**
+         * Drops a pin taken in the given generation; does nothing if the frame has been
+         * claimed since, because the claim dropped the pin already.
+         * @return true if this dropped the last pin
+         */
+        boolean release(long generation) {
+            while (true) {
+                long s = state.get();
+                int pins = (int) s;
+                if ((s >>> 32) != generation || pins <= 0) {
+                    return false;
+                }
+                if (state.compareAndSet(s, s - 1)) {
+                    return pins == 1;
+                }
+            }
+        }
+
+        /**
+         * @return the current state if the frame is neither pinned nor claimed, otherwise -1
+         */
+        long unpinnedState() {
+            long s = state.get();
+            return (int) s == 0 ? s : -1;
+        }
+
+        /**
+         * Checks that the state is still s.  This is a compare-and-set rather than a read
+         * because the reads of the page made before it must not be reordered after it.
+         */
+        boolean unchangedSince(long s) {
+            return state.compareAndSet(s, s);
+        }
+
+        boolean claimIfUnpinned() {
+            long s = state.get();
+            return (int) s == 0 && state.compareAndSet(s, claimed(s));
+        }
+
+        /**
+         * Claims the frame even if it is pinned, dropping its pins.
+         */
+        boolean claimPinned() {
+            long s = state.get();
+            return (int) s >= 0 && state.compareAndSet(s, claimed(s));
+        }
+
+        /**
+         * Ends a claim, leaving the frame with the given pin count.  Only the claimer may call this.
+         * @return the frame's generation
+         */
+        long setPins(int pins) {
+            long generation = state.get() >>> 32;
+            state.set((generation << 32) | (pins & 0xFFFFFFFFL));
+            return generation;
+        }
+
+        private static long claimed(long s) {
+            return (((s >>> 32) + 1) << 32) | 0xFFFFFFFFL;
+        }
+    }
+}
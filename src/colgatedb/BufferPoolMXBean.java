@@ -0,0 +1,48 @@
+package colgatedb;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Management interface of a buffer pool; see {@link BufferPoolStats} for what the counters
+ * mean.  Every attribute reflects the pool at the time it is read.  Pin wait is reported in
+ * microseconds.
+ */
+public interface BufferPoolMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    long getUnpinnedReads();
+
+    double getHitRatio();
+
+    long getCleanEvictions();
+
+    long getDirtyEvictions();
+
+    long getFlushes();
+
+    long getPinWaitMicros();
+
+    int getFrames();
+
+    int getPinnedFrames();
+
+    int getDirtyPages();
+
+    void reset();
+}
@@ -0,0 +1,144 @@
+package colgatedb;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A snapshot of the counters of a buffer pool, taken by {@link BufferManagerImpl#getStats()}.
+ * <p>
+ * A pin is a hit if the page was in the pool (or being read into it by another thread) and a
+ * miss if the pinning thread had to read it.  Reads of a resident page through
+ * {@link BufferManagerImpl#readPage} that needed no pin count as hits and as unpinned reads.  Evictions are clean if the victim had no
+ * unwritten changes and dirty if it had to be written first.  Flushes count pages written for
+ * any other reason: by flushPage, flushAllPages or the page cleaner.  Pin wait is the time
+ * pinning threads spent waiting for other threads: for a page being read, or for a frame when
+ * every frame was being evicted or loaded.
+ * <p>
+ * Counters only ever grow, except through {@link BufferManagerImpl#resetStats()}; to measure
+ * one query, use {@link #since(BufferPoolStats)} on snapshots taken before and after it.
+ * Frame, pinned-frame and dirty-page counts describe the pool at the time of the snapshot.
+ */
+public class BufferPoolStats {
+
+    private final long hits;
+    private final long misses;
+    private final long unpinnedReads;
+    private final long cleanEvictions;
+    private final long dirtyEvictions;
+    private final long flushes;
+    private final long pinWaitNanos;
+    private final int frames;
+    private final int pinnedFrames;
+    private final int dirtyPages;
+
+    BufferPoolStats(long hits, long misses, long unpinnedReads, long cleanEvictions, long dirtyEvictions, long flushes,
+                    long pinWaitNanos, int frames, int pinnedFrames, int dirtyPages) {
+        this.hits = hits;
+        this.misses = misses;
+        this.unpinnedReads = unpinnedReads;
+        this.cleanEvictions = cleanEvictions;
+        this.dirtyEvictions = dirtyEvictions;
+        this.flushes = flushes;
+        this.pinWaitNanos = pinWaitNanos;
+        this.frames = frames;
+        this.pinnedFrames = pinnedFrames;
+        this.dirtyPages = dirtyPages;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of hits that read the page without pinning it
+     */
+    public long getUnpinnedReads() {
+        return unpinnedReads;
+    }
+
+    /**
+     * @return fraction of pins that were hits, or 0 if there were no pins
+     */
+    public double getHitRatio() {
+        long pins = hits + misses;
+        return pins == 0 ? 0.0 : (double) hits / pins;
+    }
+
+    public long getCleanEvictions() {
+        return cleanEvictions;
+    }
+
+    public long getDirtyEvictions() {
+        return dirtyEvictions;
+    }
+
+    public long getEvictions() {
+        return cleanEvictions + dirtyEvictions;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return total time pinning threads spent waiting for other threads, in nanoseconds
+     */
+    public long getPinWaitNanos() {
+        return pinWaitNanos;
+    }
+
+    /**
+     * @return number of frames in the pool
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getPinnedFrames() {
+        return pinnedFrames;
+    }
+
+    /**
+     * @return number of pages in the pool with changes that have not been written yet
+     */
+    public int getDirtyPages() {
+        return dirtyPages;
+    }
+
+    /**
+     * The activity between an earlier snapshot and this one.  Frame, pinned-frame and dirty-page
+     * counts are those of this snapshot.
+     * @param earlier a snapshot of the same pool taken before this one
+     */
+    public BufferPoolStats since(BufferPoolStats earlier) {
+        return new BufferPoolStats(hits - earlier.hits, misses - earlier.misses,
+                unpinnedReads - earlier.unpinnedReads,
+                cleanEvictions - earlier.cleanEvictions, dirtyEvictions - earlier.dirtyEvictions,
+                flushes - earlier.flushes, pinWaitNanos - earlier.pinWaitNanos,
+                frames, pinnedFrames, dirtyPages);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BufferPoolStats(%d hits (%d unpinned), %d misses [hit ratio %.3f], evicted %d clean and %d dirty, " +
+                        "%d flushes, waited %d us; %d of %d frames pinned, %d dirty pages)",
+                hits, unpinnedReads, misses, getHitRatio(), cleanEvictions, dirtyEvictions, flushes, pinWaitNanos / 1000,
+                pinnedFrames, frames, dirtyPages);
+    }
+}
@@ -0,0 +1,231 @@
+package colgatedb;
+
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A set of named buffer pools that together act as one BufferManager.  Each table is served by
+ * exactly one pool, the "default" pool unless the table was assigned to another one, and every
+ * page operation is routed to the pool of the page's table.  Operations on all pages, such as
+ * {@link #flushAllPages()}, apply to every pool.
+ * <p>
+ * Pools let memory be split between workloads: small, hot tables can be given a "keep" pool
+ * of their own, which scans of large tables in other pools can never evict.  Each pool has
+ * its own size and replacement policy, and reports its own statistics, published as the MBean
+ * colgatedb:type=BufferPool,name=&lt;pool name&gt;.
+ * <p>
+ * Pools are meant to be set up before the tables they serve are used; see
+ * {@link #assign(int, String)}.
+ */
+public class BufferPools implements BufferManager {
+
+    public static final String DEFAULT_POOL = "default";
+
+    private final DiskManager dm;
+    private final Map<String, BufferManagerImpl> pools = new ConcurrentHashMap<String, BufferManagerImpl>();
+    private final Map<Integer, BufferManagerImpl> poolOfTable = new ConcurrentHashMap<Integer, BufferManagerImpl>();
+    private final BufferManagerImpl defaultPool;
+    private volatile boolean allowEvictDirty = false;
+
+    /**
+     * Creates a set of pools that holds only the default pool.
+     * @param defaultPool the pool that serves every table not assigned to another pool
+     * @param dm the disk manager of the pools
+     */
+    public BufferPools(BufferManagerImpl defaultPool, DiskManager dm) {
+        this.dm = dm;
+        this.defaultPool = defaultPool;
+        pools.put(DEFAULT_POOL, defaultPool);
+        defaultPool.registerMBean(DEFAULT_POOL);
+    }
+
+    /**
+     * Creates a new pool.  The pool serves no table until tables are assigned to it.
+     * @param name name of the pool
+     * @param numPages number of frames of the pool
+     * @param policy replacement policy of the pool
+     * @return the new pool, for further configuration (cleaner, read-ahead and so on); it
+     * starts with the pin timeout of the default pool
+     * @throws BufferManagerException if a pool with that name exists already
+     */
+    public synchronized BufferManagerImpl addPool(String name, int numPages, ReplacementPolicy policy) {
+        if (pools.containsKey(name)) {
+            throw new BufferManagerException("There already is a buffer pool named " + name);
+        }
+        BufferManagerImpl pool = new BufferManagerImpl(numPages, dm, policy);
+        pool.evictDirty(allowEvictDirty);
+        pool.setPinTimeout(defaultPool.getPinTimeout());
+        pools.put(name, pool);
+        pool.registerMBean(name);
+        return pool;
+    }
+
+    /**
+     * @return the pool with the given name
+     * @throws BufferManagerException if there is no such pool
+     */
+    public BufferManagerImpl getPool(String name) {
+        BufferManagerImpl pool = pools.get(name);
+        if (pool == null) {
+            throw new BufferManagerException("There is no buffer pool named " + name);
+        }
+        return pool;
+    }
+
+    public BufferManagerImpl getDefaultPool() {
+        return defaultPool;
+    }
+
+    /**
+     * @return names of all pools, including the default pool
+     */
+    public Collection<String> getPoolNames() {
+        return new ArrayList<String>(pools.keySet());
+    }
+
+    /**
+     * Makes a pool serve the pages of a table from now on.  A table's pages must not move
+     * between pools while they are in use, so the table must not have any pages in the pool
+     * that served it so far.
+     * @param tableid the table
+     * @param poolName name of the pool that is to serve the table
+     * @throws BufferManagerException if there is no such pool, or if the table's current pool
+     * holds pages of the table
+     */
+    public synchronized void assign(int tableid, String poolName) {
+        BufferManagerImpl pool = getPool(poolName);
+        BufferManagerImpl current = poolFor(tableid);
+        if (current == pool) {
+            return;
+        }
+        if (current.holdsPagesOf(tableid)) {
+            throw new BufferManagerException("Table " + tableid + " has pages in its buffer pool; " +
+                    "assign it to a pool before using it");
+        }
+        if (pool == defaultPool) {
+            poolOfTable.remove(tableid);
+        } else {
+            poolOfTable.put(tableid, pool);
+        }
+    }
+
+    /**
+     * @return the pool that serves the table
+     */
+    public BufferManagerImpl poolFor(int tableid) {
+        if (poolOfTable.isEmpty()) {
+            return defaultPool;     // saves the lookup when there is only one pool
+        }
+        BufferManagerImpl pool = poolOfTable.get(tableid);
+        return pool == null ? defaultPool : pool;
+    }
+
+    private BufferManagerImpl poolFor(PageId pid) {
+        return poolFor(pid.getTableId());
+    }
+
+    /**
+     * Stops the background threads of every pool.
+     */
+    public void stopCleaners() {
+        for (BufferManagerImpl pool : pools.values()) {
+            pool.stopCleaner();
+        }
+    }
+
+    /**
+     * Withdraws the MBeans of all pools.
+     */
+    public void unregisterMBeans() {
+        for (BufferManagerImpl pool : pools.values()) {
+            pool.unregisterMBean();
+        }
+    }
+
+    @Override
+    public Page pinPage(PageId pid, PageMaker pageMaker) {
+        return poolFor(pid).pinPage(pid, pageMaker);
+    }
+
+    @Override
+    public void unpinPage(PageId pid, boolean isDirty) {
+        poolFor(pid).unpinPage(pid, isDirty);
+    }
+
+    @Override
+    public void flushPage(PageId pid) {
+        poolFor(pid).flushPage(pid);
+    }
+
+    @Override
+    public void flushAllPages() {
+        for (BufferManagerImpl pool : pools.values()) {
+            pool.flushAllPages();
+        }
+    }
+
+    @Override
+    public synchronized void evictDirty(boolean allowEvictDirty) {
+        this.allowEvictDirty = allowEvictDirty;
+        for (BufferManagerImpl pool : pools.values()) {
+            pool.evictDirty(allowEvictDirty);
+        }
+    }
+
+    @Override
+    public void allocatePage(PageId pid) {
+        poolFor(pid).allocatePage(pid);
+    }
+
+    @Override
+    public boolean isDirty(PageId pid) {
+        return poolFor(pid).isDirty(pid);
+    }
+
+    @Override
+    public boolean inBufferPool(PageId pid) {
+        return poolFor(pid).inBufferPool(pid);
+    }
+
+    @Override
+    public Page getPage(PageId pid) {
+        return poolFor(pid).getPage(pid);
+    }
+
+    @Override
+    public void discardPage(PageId pid) {
+        poolFor(pid).discardPage(pid);
+    }
+
+    @Override
+    public void hintSequential(PageId start, PageMaker pageMaker) {
+        poolFor(start).hintSequential(start, pageMaker);
+    }
+
+    @Override
+    public <T> T readPage(PageId pid, PageMaker pageMaker, Function<? super Page, ? extends T> reader) {
+        return poolFor(pid).readPage(pid, pageMaker, reader);
+    }
+}
@@ -41,6 +41,7 @@ public class Catalog {
         DbFile table;
         String key;
         File file;   // not strictly necessary, but useful for testing
+        String pool = BufferPools.DEFAULT_POOL;
 
         public TableInfo(String name) {
             this.name = name;
@@ -117,6 +118,50 @@ public class Catalog {
         return id2info.get(tableid).key;
     }
 
+    /**
+     * Per-table switch between memory-mapped reads and ordinary positional reads.  Mapping
+     * is a good fit for tables that are read heavily and rarely written; write-hot tables
+     * should stay unmapped.
+     *
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *                function passed to addTable
+     * @param mapped true if the table's pages should be read through a memory mapping
+     * @see DiskManagerImpl#setMemoryMapped(int, boolean)
+     */
+    public void setMemoryMapped(int tableid, boolean mapped) throws NoSuchElementException {
+        checkId(tableid);
+        dm.setMemoryMapped(tableid, mapped);
+    }
+
+    public boolean isMemoryMapped(int tableid) throws NoSuchElementException {
+        checkId(tableid);
+        return dm.isMemoryMapped(tableid);
+    }
+
+    /**
+     * Chooses the buffer pool that serves the table's pages.  Small tables that are used all
+     * the time can be given a pool of their own, so that scans of large tables never evict
+     * them.  The pool must exist already, and the table must not have been used yet.
+     *
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *                function passed to addTable
+     * @param poolName name of the pool
+     * @see BufferPools#assign(int, String)
+     */
+    public void setBufferPool(int tableid, String poolName) throws NoSuchElementException {
+        checkId(tableid);
+        Database.getBufferPools().assign(tableid, poolName);
+        id2info.get(tableid).pool = poolName;
+    }
+
+    /**
+     * @return name of the buffer pool that serves the table
+     */
+    public String getBufferPool(int tableid) throws NoSuchElementException {
+        checkId(tableid);
+        return id2info.get(tableid).pool;
+    }
+
     private void checkId(int tableid) throws NoSuchElementException {
         if (!id2info.containsKey(tableid)){
             throw new NoSuchElementException();
@@ -227,6 +272,41 @@ public class Catalog {
         return hf;
     }
 
+    public static HeapFile addCompressedHeapFile(String name, TupleDesc td, File dataFile) {
+        return addCompressedHeapFile(name, td, "", dataFile);
+    }
+
+    /**
+     * Like {@link #addHeapFile(String, TupleDesc, String, File)} but the table is stored
+     * compressed.
+     * @see DiskManagerImpl#addCompressedFileEntry(int, String)
+     */
+    public static HeapFile addCompressedHeapFile(String name, TupleDesc td, String primaryKey, File dataFile) {
+        int tableid = tableIdForFile(dataFile);
+        Database.getDiskManager().addCompressedFileEntry(tableid, dataFile.getAbsolutePath());
+        HeapFile hf = new HeapFile(td, Database.getPageSize(), tableid, Database.getDiskManager().getNumPages(tableid));
+        Database.getCatalog().addTable(name, hf, primaryKey, dataFile);
+        return hf;
+    }
+
+    /**
+     * Like {@link #addHeapFile(String, TupleDesc, String, File)} but the table's pages are
+     * striped round-robin over the given files, which may live in different directories.
+     * The first stripe file identifies the table.
+     * @see DiskManagerImpl#addStripedFileEntry(int, List)
+     */
+    public static HeapFile addStripedHeapFile(String name, TupleDesc td, String primaryKey, List<File> stripeFiles) {
+        int tableid = tableIdForFile(stripeFiles.get(0));
+        List<String> filenames = new ArrayList<String>();
+        for (File stripe : stripeFiles) {
+            filenames.add(stripe.getAbsolutePath());
+        }
+        Database.getDiskManager().addStripedFileEntry(tableid, filenames);
+        HeapFile hf = new HeapFile(td, Database.getPageSize(), tableid, Database.getDiskManager().getNumPages(tableid));
+        Database.getCatalog().addTable(name, hf, primaryKey, stripeFiles.get(0));
+        return hf;
+    }
+
     private static int tableIdForFile(File tableFile) {
         assert tableFile.exists();
         return tableFile.getAbsolutePath().hashCode();
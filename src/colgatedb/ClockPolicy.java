@@ -0,0 +1,111 @@
+package colgatedb;
+
+import colgatedb.page.PageId;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * CLOCK (second-chance) replacement.
+ * <p>
+ * Each frame has a reference bit that is set whenever the frame is pinned.  Setting it is a
+ * single store and takes no lock, so pins and unpins never contend on the policy.  To evict, a
+ * hand sweeps around the frames: a frame whose bit is set gets its bit cleared and is passed
+ * over, and the first unpinned frame whose bit is clear is the victim.  Only the hand is
+ * guarded by a lock, and only evictions take it.
+ * <p>
+ * CLOCK approximates LRU: a frame survives a sweep if it was used since the hand last passed.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+
+    private volatile AtomicIntegerArray referenced;     // replaced when the pool grows
+    private int numFrames;  // guarded by this
+    private int hand;   // guarded by this
+
+    @Override
+    public synchronized void init(int numFrames) {
+        this.numFrames = numFrames;
+        referenced = new AtomicIntegerArray(numFrames);
+    }
+
+    @Override
+    public synchronized void resize(int numFrames) {
+        AtomicIntegerArray grown = new AtomicIntegerArray(numFrames);
+        for (int i = 0; i < this.numFrames; i++) {
+            grown.set(i, referenced.get(i));     // a bit set concurrently may be lost, which only costs it a sweep
+        }
+        referenced = grown;
+        this.numFrames = numFrames;
+    }
+
+    @Override
+    public void pinned(int frame) {
+        if (referenced.get(frame) == 0) {   // avoid dirtying the cache line on repeated hits
+            referenced.lazySet(frame, 1);
+        }
+    }
+
+    @Override
+    public void accessed(int frame) {
+        pinned(frame);
+    }
+
+    @Override
+    public void unpinned(int frame) {
+        // the bit set on pin is all the history CLOCK keeps
+    }
+
+    @Override
+    public void loaded(int frame, PageId pid) {
+        referenced.lazySet(frame, 1);
+    }
+
+    @Override
+    public void removed(int frame) {
+        referenced.lazySet(frame, 0);
+    }
+
+    @Override
+    public synchronized int evict(Frames frames) {
+        if (numFrames == 0) {
+            return -1;
+        }
+        // two turns of the hand clear every bit, unless frames are pinned again meanwhile
+        for (int step = 0; step < 2 * numFrames; step++) {
+            int frame = advance();
+            if (referenced.get(frame) != 0) {
+                referenced.set(frame, 0);
+            } else if (frames.tryClaim(frame)) {
+                return frame;
+            }
+        }
+        // every candidate was referenced again during the sweep; ignore the bits
+        for (int step = 0; step < numFrames; step++) {
+            int frame = advance();
+            if (frames.tryClaim(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    private int advance() {
+        int frame = hand;
+        hand = (hand + 1) % numFrames;
+        return frame;
+    }
+}
@@ -0,0 +1,210 @@
+package colgatedb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A table whose pages are stored compressed with {@link PageCompressor}.
+ * <p>
+ * Compressed pages have varying lengths, so page n can no longer be found at n * pageSize.
+ * Instead the table has two files: the data file holds the compressed images, and an index
+ * file (the data file's name plus {@value #INDEX_SUFFIX}) holds one fixed-size entry per
+ * page giving the offset, length, and slot capacity of the page's image in the data file.
+ * The whole index is also kept in memory, so locating a page costs nothing.
+ * <p>
+ * A rewritten page is stored in place when its new image fits in its slot; otherwise it
+ * gets a new, larger slot at the end of the data file.  Slot capacities are rounded up to
+ * {@value #SLOT_ALIGNMENT} bytes to leave some room for the page to grow.  The space of
+ * abandoned slots is not reclaimed.  A page whose entry has length zero has never been
+ * written and reads as an empty (all-zero) page, so allocating pages only grows the index.
+ * <p>
+ * The data file is always written before the index entry that points into it, and
+ * {@link #sync()} forces the data file before the index, so a relocated page is never
+ * pointed at before its image is on disk.  A rewrite in place is not atomic, however: a crash
+ * part way through can leave the slot holding a mix of images, or a new image that the old
+ * entry's length does not describe.  This is the compressed form of a torn page in a plain
+ * table, and is repaired the same way, by recovery rewriting the page from the log.
+ * <p>
+ * Reads of different pages run in parallel; a write excludes all reads for its duration so
+ * that no read sees a half-rewritten slot.
+ * <p>
+ * Unlike a plain table file, a compressed table must not be registered with more than one
+ * DiskManager at a time, since each keeps its own copy of the index.
+ */
+class CompressedTableFile extends TableFile {
+
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int ENTRY_SIZE = 16;       // long offset, int length, int capacity
+    private static final int SLOT_ALIGNMENT = 16;
+
+    private final RandomAccessFile dataFile;
+    private final RandomAccessFile indexFile;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+    // the in-memory index, guarded by latch; entries past the end of the arrays are all zero
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+    private long dataEnd;   // where the next relocated slot goes
+
+    CompressedTableFile(int pageSize, File file) throws IOException {
+        super(pageSize);
+        File indexName = new File(file.getPath() + INDEX_SUFFIX);
+        if (!indexName.exists() && file.length() > 0) {
+            throw new DiskManagerException("Missing page index " + indexName + " for compressed table " + file);
+        }
+        dataFile = new RandomAccessFile(file, "rw");
+        indexFile = new RandomAccessFile(indexName, "rw");
+        data = dataFile.getChannel();
+        index = indexFile.getChannel();
+        long indexLength = index.size();
+        if (indexLength % ENTRY_SIZE != 0) {
+            closeFiles();
+            throw new DiskManagerException("Invalid Length");
+        }
+        int pages = (int) (indexLength / ENTRY_SIZE);
+        offsets = new long[pages];
+        lengths = new int[pages];
+        capacities = new int[pages];
+        if (pages > 0) {
+            ByteBuffer entries = ByteBuffer.allocate(pages * ENTRY_SIZE);
+            readFully(index, entries, 0);
+            entries.flip();
+            for (int i = 0; i < pages; i++) {
+                offsets[i] = entries.getLong();
+                lengths[i] = entries.getInt();
+                capacities[i] = entries.getInt();
+            }
+        }
+        dataEnd = data.size();
+        initPages(pages);
+    }
+
+    @Override
+    void readPage(int pageno, byte[] page) {
+        byte[] compressed;
+        latch.readLock().lock();
+        try {
+            int length = pageno < lengths.length ? lengths[pageno] : 0;
+            if (length == 0) {
+                Arrays.fill(page, (byte) 0);
+                return;
+            }
+            compressed = new byte[length];
+            readFully(data, ByteBuffer.wrap(compressed), offsets[pageno]);
+        } finally {
+            latch.readLock().unlock();
+        }
+        PageCompressor.decompress(compressed, compressed.length, page);
+    }
+
+    @Override
+    void writePage(int pageno, byte[] page) {
+        byte[] compressed = PageCompressor.compress(page);
+        latch.writeLock().lock();
+        try {
+            ensureEntries(pageno + 1);
+            long offset = offsets[pageno];
+            int capacity = capacities[pageno];
+            long end = dataEnd;
+            if (compressed.length > capacity) {
+                offset = dataEnd;
+                capacity = roundUp(compressed.length);
+                end += capacity;
+            }
+            writeFully(data, ByteBuffer.wrap(compressed), offset);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putLong(offset).putInt(compressed.length).putInt(capacity);
+            entry.flip();
+            writeFully(index, entry, (long) pageno * ENTRY_SIZE);
+            // only now that both writes have succeeded does the page move to its new image
+            offsets[pageno] = offset;
+            lengths[pageno] = compressed.length;
+            capacities[pageno] = capacity;
+            dataEnd = end;
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    @Override
+    void sync() {
+        try {
+            data.force(false);
+            index.force(false);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected int pagesInStorage() {
+        try {
+            return (int) (index.size() / ENTRY_SIZE);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected void setCapacity(int pages) {
+        latch.writeLock().lock();
+        try {
+            // new index entries are zero-filled, i.e., pages that have never been written
+            indexFile.setLength((long) pages * ENTRY_SIZE);
+            if (pages < offsets.length) {
+                offsets = Arrays.copyOf(offsets, pages);
+                lengths = Arrays.copyOf(lengths, pages);
+                capacities = Arrays.copyOf(capacities, pages);
+            }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void closeFiles() {
+        try {
+            dataFile.close();
+            indexFile.close();
+        } catch (IOException e) {
+            // nothing sensible to do, the files are being abandoned anyway
+        }
+    }
+
+    private void ensureEntries(int entries) {
+        if (entries > offsets.length) {
+            int grown = Math.max(entries, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, grown);
+            lengths = Arrays.copyOf(lengths, grown);
+            capacities = Arrays.copyOf(capacities, grown);
+        }
+    }
+
+    private static int roundUp(int length) {
+        return (length + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+    }
+}
@@ -38,10 +38,20 @@ public class Database {
     // default settings
     private static final int DEFAULT_PAGE_SIZE = 4096;
     private static final int DEFAULT_POOL_SIZE = 10;   // number of pages in buffer pool
+    private static final int DEFAULT_IO_THREADS = 0;   // 0 means callers perform disk I/O themselves
+    private static final int DEFAULT_CLEANER_FRAMES = 0;   // 0 means no background page cleaner
+    private static final int DEFAULT_READ_AHEAD_PAGES = 0;   // 0 means no sequential read-ahead
+    private static final boolean DEFAULT_OFF_HEAP_FRAMES = false;
+    private static final long DEFAULT_PIN_TIMEOUT_MILLIS = 1000;   // how long a pin waits for a frame
 
     // actual settings
     private static int pageSize = DEFAULT_PAGE_SIZE;
     private static int poolSize = DEFAULT_POOL_SIZE;
+    private static int ioThreads = DEFAULT_IO_THREADS;
+    private static int cleanerFrames = DEFAULT_CLEANER_FRAMES;
+    private static int readAheadPages = DEFAULT_READ_AHEAD_PAGES;
+    private static boolean offHeapFrames = DEFAULT_OFF_HEAP_FRAMES;
+    private static long pinTimeoutMillis = DEFAULT_PIN_TIMEOUT_MILLIS;
 
     private static AtomicReference<Database> _instance = new AtomicReference<Database>(new Database());
     private final Catalog _catalog;
@@ -56,9 +66,10 @@ public class Database {
      * Constructor is private: ensures only one instance of Database (singleton design pattern).
      */
     private Database() {
-        _diskManager = new DiskManagerImpl(pageSize);
+        _diskManager = ioThreads > 0 ? new AsyncDiskManager(pageSize, ioThreads) : new DiskManagerImpl(pageSize);
+        _diskManager.registerMBeans();
         _catalog = new Catalog(pageSize, _diskManager);
-        _bufferManager = new BufferManagerImpl(poolSize, _diskManager);
+        _bufferManager = newBufferManager(poolSize, _diskManager);
 
         AccessManager tmpAM = null;
         try {
@@ -99,6 +110,18 @@ public class Database {
         return _instance.get()._bufferManager;
     }
 
+    /**
+     * @return the named buffer pools that make up the buffer manager
+     * @throws DbException if the buffer manager was replaced by one that has no named pools
+     */
+    public static BufferPools getBufferPools() {
+        BufferManager bufferManager = _instance.get()._bufferManager;
+        if (!(bufferManager instanceof BufferPools)) {
+            throw new DbException("The buffer manager has no named pools");
+        }
+        return (BufferPools) bufferManager;
+    }
+
     public static AccessManager getAccessManager() {
         if (_instance.get()._accessManager == null) {
             throw new DbException("Access manager was never initialized!");
@@ -116,8 +139,9 @@ public class Database {
 
     // ----------------- methods below are primarily used for testing ------------------------
     public static AccessManager resetBufferPool(int numPages) {
-        _instance.get()._bufferManager = new BufferManagerImpl(numPages,
-                _instance.get()._diskManager);
+        stopCleaner(_instance.get()._bufferManager);
+        unregisterMBeans(_instance.get()._bufferManager);
+        _instance.get()._bufferManager = newBufferManager(numPages, _instance.get()._diskManager);
         _instance.get()._accessManager = null;
         try {
             Class<?> logFileClass = Class.forName("colgatedb.AccessManagerImpl");
@@ -137,17 +161,129 @@ public class Database {
     public static void reset() {
         pageSize = DEFAULT_PAGE_SIZE;
         poolSize = DEFAULT_POOL_SIZE;
-        _instance.set(new Database());
+        ioThreads = DEFAULT_IO_THREADS;
+        cleanerFrames = DEFAULT_CLEANER_FRAMES;
+        readAheadPages = DEFAULT_READ_AHEAD_PAGES;
+        offHeapFrames = DEFAULT_OFF_HEAP_FRAMES;
+        pinTimeoutMillis = DEFAULT_PIN_TIMEOUT_MILLIS;
+        renew();
     }
 
     public static void setPageSize(int pageSize) {
         Database.pageSize = pageSize;
-        _instance.set(new Database());
+        renew();
     }
 
     public static void setBufferPoolSize(int numPages) {
         poolSize = numPages;
-        _instance.set(new Database());
+        renew();
+    }
+
+    /**
+     * Resizes the buffer pool in place, without resetting the database.
+     * @see BufferManagerImpl#resize(int)
+     * @throws DbException if the buffer manager cannot be resized
+     */
+    public static void resizeBufferPool(int numPages) {
+        BufferManager bufferManager = _instance.get()._bufferManager;
+        if (bufferManager instanceof BufferPools) {
+            bufferManager = ((BufferPools) bufferManager).getDefaultPool();
+        }
+        if (!(bufferManager instanceof BufferManagerImpl)) {
+            throw new DbException("The buffer manager cannot be resized");
+        }
+        ((BufferManagerImpl) bufferManager).resize(numPages);
+        poolSize = numPages;
+    }
+
+    /**
+     * Sets the number of background I/O threads used by the disk manager.  With zero threads
+     * (the default), disk I/O happens on the calling thread; otherwise an {@link AsyncDiskManager}
+     * is used.
+     */
+    public static void setIOThreads(int numThreads) {
+        ioThreads = numThreads;
+        renew();
+    }
+
+    /**
+     * Sets the number of free frames the buffer pool's background cleaner keeps ready.  With
+     * zero (the default) there is no cleaner, and a miss on a full pool writes its victim
+     * itself if the victim is dirty.
+     * @see BufferManagerImpl#startCleaner(int)
+     */
+    public static void setCleanerFrames(int numFrames) {
+        cleanerFrames = numFrames;
+        renew();
+    }
+
+    /**
+     * Sets the largest number of pages the buffer pool reads ahead of a sequential scan.  With
+     * zero (the default) there is no read-ahead.
+     * @see BufferManagerImpl#setReadAhead(int)
+     */
+    public static void setReadAheadPages(int numPages) {
+        readAheadPages = numPages;
+        renew();
+    }
+
+    /**
+     * Sets whether the buffer pool keeps unpinned clean pages off the heap.
+     * @see BufferManagerImpl#setOffHeap(boolean)
+     */
+    public static void setOffHeapFrames(boolean offHeap) {
+        offHeapFrames = offHeap;
+        renew();
+    }
+
+    /**
+     * Sets how long pinning a page waits for a frame when all frames are in use.
+     * @see BufferManagerImpl#setPinTimeout(long)
+     */
+    public static void setPinTimeout(long millis) {
+        pinTimeoutMillis = millis;
+        renew();
+    }
+
+    private static BufferManager newBufferManager(int numPages, DiskManager diskManager) {
+        BufferManagerImpl bufferManager = new BufferManagerImpl(numPages, diskManager);
+        bufferManager.setPinTimeout(pinTimeoutMillis);
+        if (cleanerFrames > 0) {
+            bufferManager.startCleaner(cleanerFrames);
+        }
+        if (readAheadPages > 0) {
+            bufferManager.setReadAhead(readAheadPages);
+        }
+        if (offHeapFrames) {
+            bufferManager.setOffHeap(true);
+        }
+        return new BufferPools(bufferManager, diskManager);
+    }
+
+    private static void stopCleaner(BufferManager bufferManager) {
+        if (bufferManager instanceof BufferPools) {
+            ((BufferPools) bufferManager).stopCleaners();
+        } else if (bufferManager instanceof BufferManagerImpl) {
+            ((BufferManagerImpl) bufferManager).stopCleaner();
+        }
+    }
+
+    private static void unregisterMBeans(BufferManager bufferManager) {
+        if (bufferManager instanceof BufferPools) {
+            ((BufferPools) bufferManager).unregisterMBeans();
+        } else if (bufferManager instanceof BufferManagerImpl) {
+            ((BufferManagerImpl) bufferManager).unregisterMBean();
+        }
+    }
+
+    private static void renew() {
+        // the new instance registers its beans under the same names, so the old ones go first
+        Database current = _instance.get();
+        unregisterMBeans(current._bufferManager);
+        current._diskManager.unregisterMBeans();
+        Database old = _instance.getAndSet(new Database());
+        stopCleaner(old._bufferManager);
+        old._diskManager.close();   // writes anything still queued and closes the table files
     }
 
     // -- new: added on 12/1/16
@@ -0,0 +1,224 @@
+package colgatedb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The plain table layout (page n at offset n * pageSize) accessed with direct I/O, which
+ * bypasses the OS page cache.  Without it every page a query touches is cached twice, once
+ * by the OS and once in the buffer pool; with it the buffer pool is the only cache, so
+ * memory is better spent on a larger pool.
+ * <p>
+ * Direct I/O has strict requirements: the channel must be opened with the JDK's
+ * {@code ExtendedOpenOption.DIRECT} (JDK 10 or later), and every transfer must use a
+ * direct buffer whose address, length, and file offset are multiples of the file system's
+ * block size.  Pages are therefore staged through aligned per-thread buffers, and the page
+ * size must be a multiple of the block size.  {@link #open(int, File)} returns null when
+ * any of this is not possible (an older JDK, a file system such as tmpfs that rejects
+ * O_DIRECT, or an unsuitable page size), and the caller falls back to buffered I/O.
+ * <p>
+ * The JDK-specific pieces are looked up reflectively so that ColgateDB still builds and
+ * runs, with buffered I/O only, on JDK 8.
+ */
+class DirectTableFile extends TableFile {
+
+    private static final OpenOption DIRECT = directOption();
+    private static final Method BLOCK_SIZE = method(FileStore.class, "getBlockSize");
+    private static final Method ALIGNED_SLICE = method(ByteBuffer.class, "alignedSlice", int.class);
+
+    private final RandomAccessFile file;    // buffered handle, used only to change the file's length
+    private final FileChannel channel;      // direct handle, used for all page transfers
+    private final int blockSize;
+    private final ThreadLocal<ByteBuffer> staging = new ThreadLocal<ByteBuffer>();
+
+    /**
+     * Opens the file for direct I/O.
+     * @return the table, or null if direct I/O is not available for this file and page size
+     */
+    static DirectTableFile open(int pageSize, File file) throws IOException {
+        if (DIRECT == null || BLOCK_SIZE == null || ALIGNED_SLICE == null) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");   // creates the file if needed
+        Path path = file.toPath();
+        FileChannel channel = null;
+        try {
+            int blockSize = (int) (long) (Long) BLOCK_SIZE.invoke(Files.getFileStore(path));
+            if (blockSize <= 0 || pageSize % blockSize != 0) {
+                raf.close();
+                return null;
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, DIRECT);
+            DirectTableFile table = new DirectTableFile(pageSize, raf, channel, blockSize);
+            table.probe();
+            return table;
+        } catch (IOException | UnsupportedOperationException | ReflectiveOperationException e) {
+            // the file system (or OS) refused direct I/O
+            if (channel != null) {
+                channel.close();
+            }
+            raf.close();
+            return null;
+        }
+    }
+
+    private DirectTableFile(int pageSize, RandomAccessFile file, FileChannel channel, int blockSize)
+            throws IOException {
+        super(pageSize);
+        this.file = file;
+        this.channel = channel;
+        this.blockSize = blockSize;
+        long length = file.length();
+        if (length % pageSize != 0) {
+            closeFiles();
+            throw new DiskManagerException("Invalid Length");
+        }
+        initPages((int) (length / pageSize));
+    }
+
+    /*
+     * Some file systems accept O_DIRECT at open time but fail the first transfer, so try one.
+     */
+    private void probe() throws IOException {
+        ByteBuffer buffer = stagingBuffer(1);
+        channel.read(buffer, 0);
+    }
+
+    @Override
+    void readPage(int pageno, byte[] data) {
+        readPages(pageno, new byte[][]{data});
+    }
+
+    @Override
+    void writePage(int pageno, byte[] data) {
+        writePages(pageno, new byte[][]{data});
+    }
+
+    /**
+     * Reads a run of adjacent pages with a single transfer through the staging buffer.
+     */
+    @Override
+    void readPages(int firstPage, byte[][] data) {
+        ByteBuffer buffer = stagingBuffer(data.length);
+        readFully(channel, buffer, (long) firstPage * pageSize);
+        buffer.flip();
+        for (byte[] page : data) {
+            buffer.get(page);
+        }
+    }
+
+    @Override
+    void writePages(int firstPage, byte[][] data) {
+        ByteBuffer buffer = stagingBuffer(data.length);
+        for (byte[] page : data) {
+            buffer.put(page);
+        }
+        buffer.flip();
+        writeFully(channel, buffer, (long) firstPage * pageSize);
+    }
+
+    /*
+     * An aligned direct buffer of exactly numPages pages, cleared for use.  Each thread keeps
+     * the largest buffer it has needed so far, since direct buffers are expensive to allocate.
+     */
+    private ByteBuffer stagingBuffer(int numPages) {
+        int bytes = numPages * pageSize;
+        ByteBuffer buffer = staging.get();
+        if (buffer == null || buffer.capacity() < bytes) {
+            ByteBuffer raw = ByteBuffer.allocateDirect(bytes + blockSize);
+            try {
+                buffer = (ByteBuffer) ALIGNED_SLICE.invoke(raw, blockSize);
+            } catch (ReflectiveOperationException e) {
+                throw new DiskManagerException(e);
+            }
+            staging.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    @Override
+    void sync() {
+        // direct transfers skip the page cache but may still sit in the device's write cache
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected int pagesInStorage() {
+        try {
+            return (int) (file.length() / pageSize);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected void setCapacity(int pages) {
+        try {
+            file.setLength((long) pages * pageSize);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected void closeFiles() {
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            // nothing sensible to do, the file is being abandoned anyway
+        }
+    }
+
+    private static OpenOption directOption() {
+        try {
+            Class<?> options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : options.getEnumConstants()) {
+                if (((Enum<?>) option).name().equals("DIRECT")) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // not a JDK that supports direct I/O
+        }
+        return null;
+    }
+
+    private static Method method(Class<?> c, String name, Class<?>... parameterTypes) {
+        try {
+            return c.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
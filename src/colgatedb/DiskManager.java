@@ -4,6 +4,9 @@ import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.page.PageMaker;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * ColgateDB
  * @author Michael Hay mhay@colgate.edu
@@ -47,8 +50,63 @@ public interface DiskManager {
 
     /**
      * Write an in-memory Page object to disk.  Uses {@link Page#getId()} to determine where page
-     * should be written.
+     * should be written.  The write is not necessarily durable until {@link #sync(int)} is called.
      * @param page to write to disk.
      */
     void writePage(Page page);
+
+    /**
+     * Read several pages at once.  Implementations are free to reorder and combine the
+     * underlying I/O (e.g., reading runs of adjacent pages with a single request), but the
+     * returned list is always in the same order as pids.
+     * <p>
+     * The default implementation simply reads the pages one at a time.
+     * @param pids ids of the desired pages
+     * @param pageMaker object capable of building page from bytes
+     * @return Page objects, one per pid and in the same order
+     */
+    default List<Page> readPages(List<PageId> pids, PageMaker pageMaker) {
+        List<Page> pages = new ArrayList<Page>(pids.size());
+        for (PageId pid : pids) {
+            pages.add(readPage(pid, pageMaker));
+        }
+        return pages;
+    }
+
+    /**
+     * Write several pages at once.  Like {@link #readPages(List, PageMaker)}, implementations may
+     * reorder and combine the underlying I/O.  If the same page appears more than once, the
+     * last occurrence is the one that ends up on disk.
+     * <p>
+     * The default implementation simply writes the pages one at a time.
+     * @param pages pages to write to disk
+     */
+    default void writePages(List<Page> pages) {
+        for (Page page : pages) {
+            writePage(page);
+        }
+    }
+
+    /**
+     * Force every page previously written for the given table to stable storage.
+     * @param tableid the table to sync
+     */
+    void sync(int tableid);
+
+    /**
+     * @param tableid the table
+     * @return number of pages allocated to the table.  The default implementation does not know
+     * and returns Integer.MAX_VALUE.
+     */
+    default int getNumPages(int tableid) {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return size of a page in bytes.  The default implementation returns the database's page
+     * size.
+     */
+    default int getPageSize() {
+        return Database.getPageSize();
+    }
 }
\ No newline at end of file
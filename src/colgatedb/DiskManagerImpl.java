@@ -7,8 +7,14 @@ import colgatedb.page.PageMaker;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ColgateDB
@@ -38,12 +44,40 @@ import java.util.Map;
  * tableid and OS file.  This is the responsibility of the {@link Catalog}.  Whenever
  * a DiskManagerImpl instance is created, the creator is responsible for calling
  * {@link #addFileEntry(int, String)} to update the DiskManager's local mapping.
+ *
+ * Each registered file is kept open for the lifetime of the DiskManager through a
+ * single FileChannel.  Pages are read and written with positional I/O so that
+ * concurrent callers never contend for a shared file pointer.  Writes are NOT
+ * synchronous: a page is only guaranteed to be on stable storage after a call
+ * to {@link #sync(int)} for its table.
+ *
+ * The number of pages in each table is read from the file's length when the file is
+ * registered and is tracked in memory from then on, so allocating a page is just a
+ * counter bump.  Files grow in extents of {@link #setExtentSize(int)} pages: when an
+ * allocation runs past the end of the file, the file is extended by a whole extent
+ * at once and the extra pages are handed out by later allocations.  Unused extent
+ * pages are trimmed when the file is closed.
+ *
+ * A table may instead be registered with {@link #addCompressedFileEntry(int, String)}, in
+ * which case its pages are stored compressed behind a page index (see
+ * {@link CompressedTableFile}), or with {@link #addStripedFileEntry(int, List)}, in which
+ * case its pages are spread round-robin over several files.  Callers see the same
+ * full-size pages either way.
+ *
+ * Every read, write, and allocation is counted per table, with read and write latencies;
+ * see {@link #getStats(int)} and {@link #registerMBeans()}.
  */
 public class DiskManagerImpl implements DiskManager {
 
-    private static final String MODE = "rws";
+    private static final String MODE = "rw";
     private final int pageSize;
+    private volatile int extentPages = 1;   // number of pages a file grows by when it runs out of room
+    private volatile boolean directIO = false;  // open newly registered files with direct I/O if possible
     Map<Integer, String> filenames = new HashMap<Integer, String>(); // local mapping from tableid to OS filename
+    private final Map<Integer, TableFile> tables = new ConcurrentHashMap<Integer, TableFile>();
+    private final ConcurrentHashMap<Integer, DiskStats> stats = new ConcurrentHashMap<Integer, DiskStats>();
+    private final DiskStats totalStats = new DiskStats();
+    private volatile boolean mbeansRegistered = false;
 
     public DiskManagerImpl(int pageSize) {
         this.pageSize = pageSize;
@@ -52,45 +86,233 @@ public class DiskManagerImpl implements DiskManager {
     /**
      * Add entry in map between tableid and corresponding OS file.  This
      * method should be called when the database is first being brought "online."
+     * The file is created if it does not already exist and is then held open
+     * until {@link #removeFileEntry(int)} or {@link #close()} is called.
+     * If direct I/O is enabled (see {@link #setDirectIO(boolean)}) the file is opened for
+     * direct I/O when the file system allows it.
      * @param tableid
      * @param filename
      */
-    public void addFileEntry(int tableid, String filename) {
-        filenames.put(tableid, filename);
-        File file = new File(filename);
-        // check if file already exists
-        if (!file.isFile()) {
-            try {
-                RandomAccessFile dataFile = new RandomAccessFile(file, MODE);
-                dataFile.close();
-            } catch (IOException e) {
-                throw new DiskManagerException(e);
+    public synchronized void addFileEntry(int tableid, String filename) {
+        removeFileEntry(tableid);   // close any previous file first so its trimmed length is what we see
+        TableFile table;
+        try {
+            table = directIO ? DirectTableFile.open(pageSize, new File(filename)) : null;
+            if (table == null) {
+                table = new PlainTableFile(pageSize, new RandomAccessFile(new File(filename), MODE));
             }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
         }
+        filenames.put(tableid, filename);
+        tables.put(tableid, table);
     }
 
-    public int getNumPages(int tableid) {
-        File file = new File(filenames.get(tableid));
-        long length = file.length();
-        if (length % pageSize != 0) {
-            throw new DiskManagerException("Invalid Length");
+    /**
+     * Like {@link #addFileEntry(int, String)}, but the table's pages are stored compressed.
+     * Compression is transparent to callers: pages are read and written as full-size page
+     * images.  Alongside the data file, a compressed table keeps a page index in a second
+     * file named filename + ".idx"; the two files must be kept together.  A file must
+     * always be opened the same way, compressed or not.
+     * @param tableid
+     * @param filename
+     * @see CompressedTableFile
+     */
+    public synchronized void addCompressedFileEntry(int tableid, String filename) {
+        removeFileEntry(tableid);
+        TableFile table;
+        try {
+            table = new CompressedTableFile(pageSize, new File(filename));
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+        filenames.put(tableid, filename);
+        tables.put(tableid, table);
+    }
+
+    /**
+     * Like {@link #addFileEntry(int, String)}, but the table's pages are striped over several
+     * files: page n is stored in file n % k, where k is the number of files.  Placing the files
+     * in directories on different devices spreads the table's I/O over all of them.  Striping
+     * is invisible to callers, which still address pages by page number.  A striped table must
+     * always be registered with the same files in the same order.
+     * @param tableid
+     * @param stripeFilenames the stripe files, in order; they are created if they do not exist
+     * @see StripedTableFile
+     */
+    public synchronized void addStripedFileEntry(int tableid, List<String> stripeFilenames) {
+        removeFileEntry(tableid);
+        TableFile table;
+        try {
+            table = new StripedTableFile(pageSize, stripeFilenames);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+        filenames.put(tableid, stripeFilenames.get(0));
+        tables.put(tableid, table);
+    }
+
+    /**
+     * Forget about a table: unused extent pages are trimmed, the file is synced and closed,
+     * and any memory mapping is released.
+     * @param tableid
+     */
+    public synchronized void removeFileEntry(int tableid) {
+        filenames.remove(tableid);
+        TableFile table = tables.remove(tableid);
+        if (table != null) {
+            table.close();
         }
-        return (int) (length / pageSize);
+    }
+
+    /**
+     * Sets how many pages a file grows by when a page is allocated past its current end.
+     * Larger extents amortize file growth over many allocations (e.g., during a bulk insert).
+     * The default is 1, which keeps every file exactly as long as the pages allocated in it.
+     * @param pages extent size in pages, at least 1
+     */
+    public void setExtentSize(int pages) {
+        if (pages < 1) {
+            throw new DiskManagerException("Extent size must be at least one page, got " + pages);
+        }
+        extentPages = pages;
+    }
+
+    public int getExtentSize() {
+        return extentPages;
+    }
+
+    /**
+     * Choose how pages of a table are read.  A memory-mapped table is served by copying
+     * pages out of the OS page cache through a mapping of the file, which avoids a system
+     * call per page read.  This suits tables that are read often and written rarely.  Writes
+     * to a mapped table still go through the file channel and are immediately visible
+     * through the mapping.  Turning mapping off takes effect at once, but the mapping itself
+     * is only released once the JVM garbage collects it.
+     * @param tableid
+     * @param mapped true to read through a memory mapping, false to use positional reads
+     * @throws DiskManagerException if mapped is true and the table is stored compressed
+     */
+    public void setMemoryMapped(int tableid, boolean mapped) {
+        lookupTable(tableid).setMapped(mapped);
+    }
+
+    /**
+     * Choose whether files registered from now on bypass the OS page cache.  With direct I/O
+     * the buffer pool is the only cache of table pages, so memory that would otherwise be
+     * spent caching the same pages twice can go to a larger pool instead.  Direct I/O is
+     * only used where it is supported: it needs JDK 10 or later, a file system that accepts
+     * O_DIRECT, and a page size that is a multiple of the file system's block size.  Other
+     * files silently use ordinary buffered I/O; {@link #isDirectIO(int)} reports which one a
+     * table got.  Files that are already registered are not affected.
+     * @param direct true to open files for direct I/O when possible
+     * @see DirectTableFile
+     */
+    public void setDirectIO(boolean direct) {
+        directIO = direct;
+    }
+
+    /**
+     * @return true if the table's file was opened for direct I/O
+     */
+    public boolean isDirectIO(int tableid) {
+        return lookupTable(tableid) instanceof DirectTableFile;
+    }
+
+    /**
+     * @return true if a file has been registered for this table
+     */
+    public boolean hasFileEntry(int tableid) {
+        return tables.containsKey(tableid);
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isMemoryMapped(int tableid) {
+        return lookupTable(tableid).isMapped();
+    }
+
+    @Override
+    public int getNumPages(int tableid) {
+        return lookupTable(tableid).getNumPages();
     }
 
     public void allocatePage(PageId pid) {
-        // check that page being allocated is next page in file
-        int pagenoRequested = pid.pageNumber();
-        int numPages = getNumPages(pid.getTableId());
-        if (pagenoRequested < numPages) {
-            throw new DiskManagerException("Attempting to allocate a page that already exists!" +
-            " You requested that page " + pagenoRequested + " be allocated but file has " + numPages + "pages.");
-        } else if (pagenoRequested > numPages) {
-            throw new DiskManagerException("Attempting to allocate pageno = " + pagenoRequested +
-                    " but file currently has only " + numPages + " pages.");
+        lookupTable(pid.getTableId()).allocate(pid.pageNumber(), extentPages);
+        statsFor(pid.getTableId()).recordAllocation();
+        totalStats.recordAllocation();
+    }
+
+    /**
+     * I/O counters for one table.  They are kept for the life of the DiskManager, even if
+     * the table's file is removed and added again.  Bytes are counted as full pages, also for
+     * compressed tables.
+     * @return the table's counters (all zero if the table has seen no I/O)
+     */
+    public DiskStats getStats(int tableid) {
+        return statsFor(tableid);
+    }
+
+    /**
+     * @return I/O counters summed over all tables
+     */
+    public DiskStats getTotalStats() {
+        return totalStats;
+    }
+
+    /**
+     * Publish the I/O counters as MBeans: the totals as colgatedb:type=DiskStats,table=all and
+     * each table's counters as colgatedb:type=DiskStats,table=&lt;tableid&gt;.  Beans already
+     * registered under those names (e.g., by an earlier DiskManager) are replaced.
+     */
+    public void registerMBeans() {
+        mbeansRegistered = true;
+        MBeans.register(totalStats, "type=DiskStats,table=all");
+        for (Map.Entry<Integer, DiskStats> entry : stats.entrySet()) {
+            MBeans.register(entry.getValue(), "type=DiskStats,table=" + entry.getKey());
+        }
+    }
+
+    /**
+     * Withdraw the MBeans published by {@link #registerMBeans()}, e.g., when this DiskManager
+     * is replaced.  Beans that have since been replaced by another DiskManager's are left alone.
+     */
+    public void unregisterMBeans() {
+        mbeansRegistered = false;
+        MBeans.unregister(totalStats, "type=DiskStats,table=all");
+        for (Map.Entry<Integer, DiskStats> entry : stats.entrySet()) {
+            MBeans.unregister(entry.getValue(), "type=DiskStats,table=" + entry.getKey());
         }
-        byte[] emptyBytes = new byte[pageSize];
-        writePageData(pid, emptyBytes);
+    }
+
+    private DiskStats statsFor(int tableid) {
+        DiskStats tableStats = stats.get(tableid);
+        if (tableStats == null) {
+            DiskStats created = new DiskStats();
+            tableStats = stats.putIfAbsent(tableid, created);
+            if (tableStats == null) {
+                tableStats = created;
+                if (mbeansRegistered) {
+                    MBeans.register(created, "type=DiskStats,table=" + tableid);
+                }
+            }
+        }
+        return tableStats;
+    }
+
+    private void recordRead(int tableid, int pages, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        statsFor(tableid).recordRead(pages, (long) pages * pageSize, nanos);
+        totalStats.recordRead(pages, (long) pages * pageSize, nanos);
+    }
+
+    private void recordWrite(int tableid, int pages, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        statsFor(tableid).recordWrite(pages, (long) pages * pageSize, nanos);
+        totalStats.recordWrite(pages, (long) pages * pageSize, nanos);
     }
 
     public Page readPage(PageId pid, PageMaker pageMaker) {
@@ -104,47 +326,148 @@ public class DiskManagerImpl implements DiskManager {
         writePageData(pid, pageData);
     }
 
+    /**
+     * Reads the requested pages, combining each run of adjacent pages of the same table into a
+     * single scatter read (for tables stored in the plain layout).
+     */
+    @Override
+    public List<Page> readPages(List<PageId> pids, PageMaker pageMaker) {
+        Page[] pages = new Page[pids.size()];
+        for (List<Integer> run : contiguousRuns(pids)) {
+            PageId first = pids.get(run.get(0));
+            TableFile table = lookupTable(first.getTableId());
+            if (first.pageNumber() + run.size() > table.numPagesAtLeast(first.pageNumber() + run.size())) {
+                throw new DiskManagerException("Attempting to read beyond end of file!");
+            }
+            byte[][] data = new byte[run.size()][pageSize];
+            long start = System.nanoTime();
+            table.readPages(first.pageNumber(), data);
+            recordRead(first.getTableId(), data.length, start);
+            for (int i = 0; i < data.length; i++) {
+                int request = run.get(i);
+                pages[request] = pageMaker.makePage(pids.get(request), data[i]);
+            }
+        }
+        return Arrays.asList(pages);
+    }
+
+    /**
+     * Writes the given pages, combining each run of adjacent pages of the same table into a
+     * single gather write (for tables stored in the plain layout).
+     */
+    @Override
+    public void writePages(List<Page> pages) {
+        List<PageId> pids = new ArrayList<PageId>(pages.size());
+        for (Page page : pages) {
+            pids.add(page.getId());
+        }
+        for (List<Integer> run : contiguousRuns(pids)) {
+            PageId first = pids.get(run.get(0));
+            TableFile table = lookupTable(first.getTableId());
+            if (first.pageNumber() > table.numPagesAtLeast(first.pageNumber())) {
+                throw new DiskManagerException("Writing a page beyond end of file");
+            }
+            byte[][] data = new byte[run.size()][];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = pages.get(run.get(i)).getPageData();
+                if (data[i].length != pageSize) {
+                    throw new DiskManagerException("page size is invalid! Got " + data[i].length +
+                            " bytes, expected " + pageSize);
+                }
+            }
+            long start = System.nanoTime();
+            table.writePages(first.pageNumber(), data);
+            table.written(first.pageNumber() + run.size());
+            recordWrite(first.getTableId(), data.length, start);
+        }
+    }
+
+    /*
+     * Groups requests into runs of consecutive page numbers within the same table.  Each run is
+     * a list of indexes into pids, ordered by page number.  The sort is stable, so if a page is
+     * requested twice the later request ends up in a later run.
+     */
+    private static List<List<Integer>> contiguousRuns(final List<PageId> pids) {
+        List<Integer> order = new ArrayList<Integer>(pids.size());
+        for (int i = 0; i < pids.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                PageId pa = pids.get(a);
+                PageId pb = pids.get(b);
+                if (pa.getTableId() != pb.getTableId()) {
+                    return Integer.compare(pa.getTableId(), pb.getTableId());
+                }
+                return Integer.compare(pa.pageNumber(), pb.pageNumber());
+            }
+        });
+        List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        List<Integer> run = null;
+        PageId prev = null;
+        for (Integer request : order) {
+            PageId pid = pids.get(request);
+            if (prev == null || pid.getTableId() != prev.getTableId() ||
+                    pid.pageNumber() != prev.pageNumber() + 1) {
+                run = new ArrayList<Integer>();
+                runs.add(run);
+            }
+            run.add(request);
+            prev = pid;
+        }
+        return runs;
+    }
+
+    /**
+     * Force all pages written to the given table out to stable storage.
+     * @param tableid table whose file should be synced
+     */
+    @Override
+    public void sync(int tableid) {
+        lookupTable(tableid).sync();
+    }
+
+    /**
+     * Sync and close every open file.  The DiskManager should not be used afterwards.
+     */
+    public synchronized void close() {
+        for (Integer tableid : tables.keySet()) {
+            removeFileEntry(tableid);
+        }
+    }
+
     private void writePageData(PageId pid, byte[] pageData) {
         if (pageData.length != pageSize) {
             throw new DiskManagerException("page size is invalid! Got " + pageData.length + " bytes, expected " + pageSize);
         }
-        File file = lookupFile(pid);
-        try {
-            RandomAccessFile dataFile = new RandomAccessFile(file, MODE);
-            int offset = pid.pageNumber() * pageSize;
-            if (offset > dataFile.length()) {
-                throw new RuntimeException("Writing a page beyond end of file");
-            }
-            dataFile.seek(offset);
-            dataFile.write(pageData);
-            dataFile.close();
-        } catch (IOException e) {
-            throw new DiskManagerException(e);
+        TableFile table = lookupTable(pid.getTableId());
+        if (pid.pageNumber() > table.numPagesAtLeast(pid.pageNumber())) {
+            throw new DiskManagerException("Writing a page beyond end of file");
         }
+        long start = System.nanoTime();
+        table.writePage(pid.pageNumber(), pageData);
+        table.written(pid.pageNumber() + 1);
+        recordWrite(pid.getTableId(), 1, start);
     }
 
     private byte[] readPageData(PageId pid) {
-        File file = lookupFile(pid);
-        try {
-            RandomAccessFile dataFile = new RandomAccessFile(file, MODE);
-            if (dataFile.length() < pageSize * pid.pageNumber() + pageSize) {
-                throw new DiskManagerException("Attempting to read beyond end of file!");
-            }
-            dataFile.seek(pageSize * pid.pageNumber());
-            byte[] data = new byte[pageSize];
-            dataFile.read(data);
-            dataFile.close();
-            return data;
-        } catch (IOException e) {
-            throw new DiskManagerException(e);
+        TableFile table = lookupTable(pid.getTableId());
+        if (pid.pageNumber() >= table.numPagesAtLeast(pid.pageNumber() + 1)) {
+            throw new DiskManagerException("Attempting to read beyond end of file!");
         }
+        byte[] data = new byte[pageSize];
+        long start = System.nanoTime();
+        table.readPage(pid.pageNumber(), data);
+        recordRead(pid.getTableId(), 1, start);
+        return data;
     }
 
-    private File lookupFile(PageId pid) {
-        if (!filenames.containsKey(pid.getTableId())) {
+    private TableFile lookupTable(int tableid) {
+        TableFile table = tables.get(tableid);
+        if (table == null) {
             throw new DiskManagerException("No record of this table id!");
         }
-        return new File(filenames.get(pid.getTableId()));
+        return table;
     }
-
 }
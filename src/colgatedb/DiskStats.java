@@ -0,0 +1,151 @@
+package colgatedb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * I/O counters for one table (or, for {@link DiskManagerImpl#getTotalStats()}, for all
+ * tables of a DiskManager): pages and bytes read and written, pages allocated, and
+ * latency histograms for reads and writes.  A read or write request is timed as a whole, so
+ * a vectored transfer of several adjacent pages is one latency sample.
+ * <p>
+ * Counters only ever grow, except through {@link #reset()}; to measure one query, take the
+ * difference of the counters before and after it.
+ */
+public class DiskStats implements DiskStatsMXBean {
+
+    private final LongAdder pagesRead = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final LongAdder pagesAllocated = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LatencyHistogram readLatency = new LatencyHistogram();    // nanoseconds
+    private final LatencyHistogram writeLatency = new LatencyHistogram();   // nanoseconds
+
+    void recordRead(int pages, long bytes, long nanos) {
+        pagesRead.add(pages);
+        bytesRead.add(bytes);
+        readLatency.record(nanos);
+    }
+
+    void recordWrite(int pages, long bytes, long nanos) {
+        pagesWritten.add(pages);
+        bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    void recordAllocation() {
+        pagesAllocated.increment();
+    }
+
+    @Override
+    public long getPagesRead() {
+        return pagesRead.sum();
+    }
+
+    @Override
+    public long getPagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    @Override
+    public long getPagesAllocated() {
+        return pagesAllocated.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getReadCalls() {
+        return readLatency.getCount();
+    }
+
+    @Override
+    public long getWriteCalls() {
+        return writeLatency.getCount();
+    }
+
+    /**
+     * @return latencies of read requests, in nanoseconds
+     */
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * @return latencies of write requests, in nanoseconds
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    @Override
+    public double getMeanReadMicros() {
+        return readLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getP99ReadMicros() {
+        return readLatency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxReadMicros() {
+        return readLatency.getMax() / 1000.0;
+    }
+
+    @Override
+    public double getMeanWriteMicros() {
+        return writeLatency.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getP99WriteMicros() {
+        return writeLatency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxWriteMicros() {
+        return writeLatency.getMax() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        pagesRead.reset();
+        pagesWritten.reset();
+        pagesAllocated.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        readLatency.reset();
+        writeLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "DiskStats(read " + getPagesRead() + " pages in " + getReadCalls() + " calls [" + readLatency +
+                " ns], wrote " + getPagesWritten() + " pages in " + getWriteCalls() + " calls [" + writeLatency +
+                " ns], allocated " + getPagesAllocated() + " pages)";
+    }
+}
@@ -0,0 +1,53 @@
+package colgatedb;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Management interface of {@link DiskStats}.  Latencies are reported in microseconds.
+ */
+public interface DiskStatsMXBean {
+
+    long getPagesRead();
+
+    long getPagesWritten();
+
+    long getPagesAllocated();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * @return number of read requests; a vectored read of adjacent pages counts once
+     */
+    long getReadCalls();
+
+    long getWriteCalls();
+
+    double getMeanReadMicros();
+
+    double getP99ReadMicros();
+
+    double getMaxReadMicros();
+
+    double getMeanWriteMicros();
+
+    double getP99WriteMicros();
+
+    double getMaxWriteMicros();
+
+    void reset();
+}
@@ -0,0 +1,124 @@
+package colgatedb;
+
+import colgatedb.page.PageId;
+
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Evicts the least recently unpinned frame.
+ * <p>
+ * The frames are kept in a doubly-linked list, most recently unpinned first.  A frame is moved
+ * to the head of the list when its pin count drops to 0, which takes the list's lock.  Pinning
+ * does not touch the list: a pinned frame stays where it is until an eviction scan reaches it
+ * and unlinks it.  When dirty pages may not be evicted, the scan may have to walk past many
+ * dirty frames, which is linear in the size of the pool in the worst case.
+ */
+public class LruPolicy implements ReplacementPolicy {
+
+    private static final int NONE = -1;
+
+    // guarded by this
+    private int[] prev;
+    private int[] next;
+    private boolean[] inList;
+    private int head = NONE;   // most recently unpinned
+    private int tail = NONE;   // least recently unpinned
+
+    @Override
+    public synchronized void init(int numFrames) {
+        prev = new int[numFrames];
+        next = new int[numFrames];
+        inList = new boolean[numFrames];
+        Arrays.fill(prev, NONE);
+        Arrays.fill(next, NONE);
+    }
+
+    @Override
+    public synchronized void resize(int numFrames) {
+        int oldFrames = prev.length;
+        prev = Arrays.copyOf(prev, numFrames);
+        next = Arrays.copyOf(next, numFrames);
+        inList = Arrays.copyOf(inList, numFrames);
+        Arrays.fill(prev, oldFrames, numFrames, NONE);
+        Arrays.fill(next, oldFrames, numFrames, NONE);
+    }
+
+    @Override
+    public void pinned(int frame) {
+        // pinned frames are unlinked lazily by evict
+    }
+
+    @Override
+    public synchronized void unpinned(int frame) {
+        unlink(frame);
+        next[frame] = head;
+        if (head != NONE) {
+            prev[head] = frame;
+        }
+        head = frame;
+        if (tail == NONE) {
+            tail = frame;
+        }
+        inList[frame] = true;
+    }
+
+    @Override
+    public void loaded(int frame, PageId pid) {
+        // the frame joins the list when it is first unpinned
+    }
+
+    @Override
+    public synchronized void removed(int frame) {
+        unlink(frame);
+    }
+
+    @Override
+    public synchronized int evict(Frames frames) {
+        int current = tail;
+        while (current != NONE) {
+            int before = prev[current];
+            if (!frames.isEvictable(current)) {
+                unlink(current);    // rejoins the list when it is unpinned
+            } else if (frames.tryClaim(current)) {
+                unlink(current);
+                return current;
+            }
+            current = before;
+        }
+        return NONE;
+    }
+
+    private void unlink(int frame) {
+        if (!inList[frame]) {
+            return;
+        }
+        if (prev[frame] != NONE) {
+            next[prev[frame]] = next[frame];
+        } else {
+            head = next[frame];
+        }
+        if (next[frame] != NONE) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tail = prev[frame];
+        }
+        prev[frame] = NONE;
+        next[frame] = NONE;
+        inList[frame] = false;
+    }
+}
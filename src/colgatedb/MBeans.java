@@ -0,0 +1,80 @@
+package colgatedb;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Registers ColgateDB's monitoring beans with the platform MBean server, under the
+ * "colgatedb" domain, so they can be browsed with JConsole or VisualVM.
+ */
+final class MBeans {
+
+    static final String DOMAIN = "colgatedb";
+    // the bean this class registered under each name; guarded by MBeans.class
+    private static final Map<String, Object> registered = new HashMap<>();
+
+    private MBeans() {
+    }
+
+    /**
+     * Register bean under colgatedb:properties, replacing any bean already registered under
+     * that name (e.g., one belonging to a Database instance that has since been reset).
+     * Monitoring is best-effort: failures are ignored.
+     * @param properties the key properties of the object name, e.g. "type=DiskStats,table=all"
+     */
+    static synchronized void register(Object bean, String properties) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            registered.remove(properties);
+            server.registerMBean(bean, name);
+            registered.put(properties, bean);
+        } catch (JMException | SecurityException e) {
+            // monitoring is optional; the database works the same without it
+        }
+    }
+
+    /**
+     * Unregister bean from colgatedb:properties, so that the server no longer keeps it (and
+     * whatever it reports on) alive.  Nothing happens unless bean is the bean registered under
+     * that name: one that has since been replaced stays replaced.
+     * @param properties the key properties the bean was registered with
+     */
+    static synchronized void unregister(Object bean, String properties) {
+        if (registered.get(properties) != bean) {
+            return;
+        }
+        registered.remove(properties);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | SecurityException e) {
+            // monitoring is optional; the database works the same without it
+        }
+    }
+}
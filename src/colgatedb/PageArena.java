@@ -0,0 +1,98 @@
+package colgatedb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Off-heap memory for the page images of a buffer pool: one slot of pageSize bytes per frame,
+ * carved out of direct ByteBuffers.  A single direct buffer holds at most 2 GB, so larger
+ * arenas are made of several chunks of at most 1 GB each.
+ * <p>
+ * The arena does no locking of its own.  Callers must not write a slot while another thread
+ * reads or writes the same slot.
+ */
+class PageArena {
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int pageSize;
+    private final ByteBuffer[] slots;
+
+    /**
+     * @param numSlots number of page images the arena holds
+     * @param pageSize size of a page image in bytes
+     */
+    PageArena(int numSlots, int pageSize) {
+        this.pageSize = pageSize;
+        this.slots = new ByteBuffer[numSlots];
+        int slotsPerChunk = Math.max(1, MAX_CHUNK_BYTES / pageSize);
+        ByteBuffer chunk = null;
+        for (int i = 0; i < numSlots; i++) {
+            int offset = i % slotsPerChunk;
+            if (offset == 0) {
+                int chunkSlots = Math.min(slotsPerChunk, numSlots - i);
+                chunk = ByteBuffer.allocateDirect(chunkSlots * pageSize);
+            }
+            ByteBuffer slot = chunk.duplicate();
+            slot.position(offset * pageSize);
+            slot.limit((offset + 1) * pageSize);
+            slots[i] = slot.slice();
+        }
+    }
+
+    private PageArena(int pageSize, ByteBuffer[] slots) {
+        this.pageSize = pageSize;
+        this.slots = slots;
+    }
+
+    int size() {
+        return slots.length;
+    }
+
+    /**
+     * @return an arena with numSlots slots whose first slots are those of this arena, sharing
+     * their memory; the rest are newly allocated
+     */
+    PageArena grow(int numSlots) {
+        PageArena added = new PageArena(numSlots - slots.length, pageSize);
+        ByteBuffer[] grown = Arrays.copyOf(slots, numSlots);
+        System.arraycopy(added.slots, 0, grown, slots.length, added.slots.length);
+        return new PageArena(pageSize, grown);
+    }
+
+    /**
+     * Copies a page image into a slot.
+     * @throws BufferManagerException if the image is not exactly one page long
+     */
+    void write(int slot, byte[] image) {
+        if (image.length != pageSize) {
+            throw new BufferManagerException("Page image is " + image.length + " bytes, expected " + pageSize);
+        }
+        ByteBuffer buffer = slots[slot].duplicate();
+        buffer.put(image);
+    }
+
+    /**
+     * @return a copy of the page image held in a slot
+     */
+    byte[] read(int slot) {
+        byte[] image = new byte[pageSize];
+        slots[slot].duplicate().get(image);
+        return image;
+    }
+}
@@ -0,0 +1,109 @@
+package colgatedb;
+
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A small, fast codec for page images, used by {@link CompressedTableFile}.
+ * <p>
+ * Heap pages are mostly empty slots and zero padding, so the codec only looks for runs of
+ * zero bytes; everything else is copied as is.  The compressed form is a sequence of
+ * tokens.  A token byte t below 0x80 is followed by t + 1 literal bytes; a token byte
+ * t of 0x80 or above stands for (t &amp; 0x7F) + 1 zero bytes.  A page never grows by more
+ * than one byte per 128 bytes of input, and decoding is a single pass with no lookups.
+ */
+final class PageCompressor {
+
+    private static final int MAX_RUN = 128;     // longest run (literal or zero) one token describes
+    private static final int MIN_ZERO_RUN = 3;  // shorter zero runs are cheaper to copy as literals
+
+    private PageCompressor() {
+    }
+
+    /**
+     * @return the largest number of bytes {@link #compress(byte[])} can produce for an input
+     * of the given length
+     */
+    static int maxCompressedLength(int length) {
+        return length + (length + MAX_RUN - 1) / MAX_RUN;
+    }
+
+    static byte[] compress(byte[] in) {
+        byte[] out = new byte[maxCompressedLength(in.length)];
+        int o = 0;
+        int i = 0;
+        while (i < in.length) {
+            int zeros = zeroRun(in, i);
+            if (zeros >= MIN_ZERO_RUN) {
+                out[o++] = (byte) (0x80 | (zeros - 1));
+                i += zeros;
+                continue;
+            }
+            // extend the literal until a worthwhile zero run starts or the token is full
+            int start = i;
+            while (i < in.length && i - start < MAX_RUN && zeroRun(in, i) < MIN_ZERO_RUN) {
+                i++;
+            }
+            out[o++] = (byte) (i - start - 1);
+            System.arraycopy(in, start, out, o, i - start);
+            o += i - start;
+        }
+        return Arrays.copyOf(out, o);
+    }
+
+    /**
+     * Decode the first length bytes of in, which must expand to exactly out.length bytes.
+     * @throws DiskManagerException if the input is not a valid encoding of out.length bytes
+     */
+    static void decompress(byte[] in, int length, byte[] out) {
+        int o = 0;
+        int i = 0;
+        while (i < length) {
+            int token = in[i++] & 0xFF;
+            int count = (token & 0x7F) + 1;
+            if (o + count > out.length) {
+                throw new DiskManagerException("Corrupt compressed page: expands past " + out.length + " bytes");
+            }
+            if (token >= 0x80) {
+                Arrays.fill(out, o, o + count, (byte) 0);
+            } else {
+                if (i + count > length) {
+                    throw new DiskManagerException("Corrupt compressed page: truncated literal");
+                }
+                System.arraycopy(in, i, out, o, count);
+                i += count;
+            }
+            o += count;
+        }
+        if (o != out.length) {
+            throw new DiskManagerException("Corrupt compressed page: expands to " + o +
+                    " bytes, expected " + out.length);
+        }
+    }
+
+    /*
+     * length of the run of zero bytes starting at in[from], capped at MAX_RUN
+     */
+    private static int zeroRun(byte[] in, int from) {
+        int end = Math.min(in.length, from + MAX_RUN);
+        int i = from;
+        while (i < end && in[i] == 0) {
+            i++;
+        }
+        return i - from;
+    }
+}
@@ -0,0 +1,218 @@
+package colgatedb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The default table layout: one OS file holding the pages back to back, so page n lives
+ * at offset n * pageSize.  Pages are moved with positional I/O, which means concurrent
+ * readers and writers never contend for a shared file pointer.
+ * <p>
+ * The table can also be read through a memory mapping of the file (see
+ * {@link DiskManagerImpl#setMemoryMapped(int, boolean)}).
+ */
+class PlainTableFile extends TableFile {
+
+    private static final int MAP_SEGMENT_PAGES = 1024;  // pages covered by each memory-mapped segment
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private volatile boolean mapped;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    PlainTableFile(int pageSize, RandomAccessFile file) throws IOException {
+        super(pageSize);
+        this.file = file;
+        this.channel = file.getChannel();
+        long length = channel.size();
+        if (length % pageSize != 0) {
+            file.close();
+            throw new DiskManagerException("Invalid Length");
+        }
+        initPages((int) (length / pageSize));
+    }
+
+    @Override
+    void readPage(int pageno, byte[] data) {
+        if (mapped) {
+            readMapped(pageno, data);
+        } else {
+            readFully(channel, ByteBuffer.wrap(data), (long) pageno * pageSize);
+        }
+    }
+
+    @Override
+    void writePage(int pageno, byte[] data) {
+        writeFully(channel, ByteBuffer.wrap(data), (long) pageno * pageSize);
+    }
+
+    /*
+     * Scatter/gather transfers have no positional form, so they move the channel's file pointer.
+     * Single-page transfers never use the file pointer, so only vectored transfers need to be
+     * serialized with one another.
+     */
+    @Override
+    synchronized void readPages(int firstPage, byte[][] data) {
+        if (mapped) {
+            super.readPages(firstPage, data);
+            return;
+        }
+        ByteBuffer[] buffers = wrap(data);
+        try {
+            channel.position((long) firstPage * pageSize);
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                if (channel.read(buffers) < 0) {
+                    throw new DiskManagerException("Unexpected end of file!");
+                }
+            }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    synchronized void writePages(int firstPage, byte[][] data) {
+        ByteBuffer[] buffers = wrap(data);
+        try {
+            channel.position((long) firstPage * pageSize);
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    /*
+     * Copies page pageno out of the mapping.  Segments are mapped lazily and only up to the
+     * current end of file (mapping past the end would grow the file), so a segment that was
+     * mapped before the file grew is remapped the first time a newer page in it is read.
+     */
+    private void readMapped(int pageno, byte[] data) {
+        int segmentNo = pageno / MAP_SEGMENT_PAGES;
+        int offsetInSegment = (pageno % MAP_SEGMENT_PAGES) * pageSize;
+        MappedByteBuffer[] current = segments;
+        MappedByteBuffer segment = segmentNo < current.length ? current[segmentNo] : null;
+        if (segment == null || segment.capacity() < offsetInSegment + pageSize) {
+            segment = mapSegment(segmentNo);
+        }
+        ByteBuffer view = segment.duplicate();  // private position so concurrent readers don't interfere
+        view.position(offsetInSegment);
+        view.get(data);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(int segmentNo) {
+        long segmentBytes = (long) MAP_SEGMENT_PAGES * pageSize;
+        long start = segmentNo * segmentBytes;
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, Math.max(segments.length, segmentNo + 1));
+        try {
+            long length = Math.min(segmentBytes, channel.size() - start);
+            grown[segmentNo] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+        segments = grown;
+        return grown[segmentNo];
+    }
+
+    /*
+     * Turning mapping off only drops the segments: there is no portable way to unmap them, so
+     * the JVM unmaps each one when it is garbage collected.  Until then the file stays mapped,
+     * though nothing reads through the mapping any more.
+     */
+    @Override
+    synchronized void setMapped(boolean mapped) {
+        this.mapped = mapped;
+        if (!mapped) {
+            dropSegments();
+        }
+    }
+
+    @Override
+    boolean isMapped() {
+        return mapped;
+    }
+
+    @Override
+    void sync() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected int pagesInStorage() {
+        try {
+            return (int) (channel.size() / pageSize);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    /*
+     * Shrinking the file (only done by close, to trim unused extent pages) first turns mapping
+     * off: reading a mapped page past the new end of file would fault rather than throw.
+     */
+    @Override
+    protected synchronized void setCapacity(int pages) {
+        // changing the file's length zero-fills any new pages, which is an empty page image
+        long length = (long) pages * pageSize;
+        try {
+            if (length < channel.size()) {
+                mapped = false;
+                dropSegments();
+            }
+            file.setLength(length);
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    @Override
+    protected synchronized void closeFiles() {
+        mapped = false;
+        dropSegments();
+        try {
+            file.close();
+        } catch (IOException e) {
+            // nothing sensible to do, the file is being abandoned anyway
+        }
+    }
+
+    /*
+     * Drops every mapped segment; see setMapped for when they are actually unmapped.  Caller
+     * must hold this object's monitor.
+     */
+    private void dropSegments() {
+        segments = new MappedByteBuffer[0];
+    }
+
+    private static ByteBuffer[] wrap(byte[][] data) {
+        ByteBuffer[] buffers = new ByteBuffer[data.length];
+        for (int i = 0; i < data.length; i++) {
+            buffers[i] = ByteBuffer.wrap(data[i]);
+        }
+        return buffers;
+    }
+}
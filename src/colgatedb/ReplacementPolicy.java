@@ -0,0 +1,98 @@
+package colgatedb;
+
+import colgatedb.page.PageId;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Decides which frame of a {@link BufferManagerImpl} to evict.  Frames are identified by their
+ * index in the buffer pool, from 0 to numFrames - 1.
+ * <p>
+ * The buffer manager calls these methods from many threads at once and without holding any
+ * lock of its own, so each policy does its own synchronization.  {@link #pinned(int)} is on
+ * the hit path of every pin and should be as cheap as possible.
+ * <p>
+ * A policy instance belongs to a single buffer manager.
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Called once by the buffer manager before any other method.
+     * @param numFrames number of frames in the buffer pool
+     */
+    void init(int numFrames);
+
+    /**
+     * Called when the buffer pool grows, before any of the new frames is used.  Frames 0 to
+     * the old number of frames - 1 are unchanged.  A pool that shrinks does not call this; it
+     * stops using some frames, which are reported as {@link #removed(int)} when their pages go.
+     * @param numFrames new number of frames
+     */
+    void resize(int numFrames);
+
+    /**
+     * Called each time a frame that holds a page is pinned.
+     */
+    void pinned(int frame);
+
+    /**
+     * Called when the page in a frame is read without pinning the frame.  Unlike the other
+     * methods this is a hint: a policy that cannot note the access without a lock may ignore
+     * it, as the default implementation does.
+     */
+    default void accessed(int frame) {
+    }
+
+    /**
+     * Called when the pin count of a frame drops to 0.  The frame may have been evicted and
+     * reused already by the time this is called.
+     */
+    void unpinned(int frame);
+
+    /**
+     * Called when a page is read into a frame.  The frame is pinned at this point.
+     */
+    void loaded(int frame, PageId pid);
+
+    /**
+     * Called when the page in a frame leaves the buffer pool, by eviction or by discarding.
+     */
+    void removed(int frame);
+
+    /**
+     * Chooses a victim and claims it with {@link Frames#tryClaim(int)}.
+     * @return the claimed frame, or -1 if no frame could be claimed
+     */
+    int evict(Frames frames);
+
+    /**
+     * The buffer manager's view of its frames, given to {@link #evict(Frames)}.
+     */
+    interface Frames {
+        /**
+         * @return true if the frame is in use (not free) and unpinned.  The answer may be out
+         * of date as soon as it is returned.
+         */
+        boolean isEvictable(int frame);
+
+        /**
+         * Claims the frame for eviction if it is in use, unpinned, and either clean or the
+         * buffer manager is allowed to evict dirty pages.
+         * @return true if the frame was claimed; the caller must then return it from evict
+         */
+        boolean tryClaim(int frame);
+    }
+}
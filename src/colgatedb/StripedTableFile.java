@@ -0,0 +1,157 @@
+package colgatedb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * A table striped across several files, typically in different directories on different
+ * devices.  Page n is stored in stripe n % k at position n / k of that stripe, so
+ * consecutive pages rotate over the stripes and scans and random reads spread their I/O
+ * over every device.
+ * <p>
+ * Each stripe is an ordinary {@link PlainTableFile}, so stripes support the same positional,
+ * vectored, and memory-mapped access; a run of adjacent pages becomes one vectored transfer
+ * per stripe.  The stripes' own page counts are unused, since the table's count lives in the
+ * base class.  When the table has p pages, stripe i holds ceil((p - i) / k) of them, and
+ * stripe files are checked for exactly that shape when the table is opened.  The stripe
+ * files must always be listed in the same order.
+ */
+class StripedTableFile extends TableFile {
+
+    private final PlainTableFile[] stripes;
+
+    StripedTableFile(int pageSize, List<String> filenames) throws IOException {
+        super(pageSize);
+        if (filenames.isEmpty()) {
+            throw new DiskManagerException("A striped table needs at least one stripe file");
+        }
+        stripes = new PlainTableFile[filenames.size()];
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new PlainTableFile(pageSize, new RandomAccessFile(filenames.get(i), "rw"));
+            }
+        } catch (IOException | DiskManagerException e) {
+            closeFiles();
+            throw e;
+        }
+        int pages = pagesInStorage();
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i].getNumPages() != stripePages(pages, i)) {
+                closeFiles();
+                throw new DiskManagerException("Invalid Length: stripe " + filenames.get(i) +
+                        " has " + stripes[i].getNumPages() + " pages, expected " + stripePages(pages, i));
+            }
+        }
+        initPages(pages);
+    }
+
+    @Override
+    void readPage(int pageno, byte[] data) {
+        stripes[pageno % stripes.length].readPage(pageno / stripes.length, data);
+    }
+
+    @Override
+    void writePage(int pageno, byte[] data) {
+        stripes[pageno % stripes.length].writePage(pageno / stripes.length, data);
+    }
+
+    /**
+     * Adjacent pages of the table are adjacent within each stripe, so the run is split into
+     * one vectored read per stripe.
+     */
+    @Override
+    void readPages(int firstPage, byte[][] data) {
+        for (int s = 0; s < Math.min(stripes.length, data.length); s++) {
+            int pageno = firstPage + s;
+            stripes[pageno % stripes.length].readPages(pageno / stripes.length, everyKth(data, s));
+        }
+    }
+
+    @Override
+    void writePages(int firstPage, byte[][] data) {
+        for (int s = 0; s < Math.min(stripes.length, data.length); s++) {
+            int pageno = firstPage + s;
+            stripes[pageno % stripes.length].writePages(pageno / stripes.length, everyKth(data, s));
+        }
+    }
+
+    /*
+     * data[from], data[from + k], data[from + 2k], ...  The arrays are shared, not copied, so
+     * reading into the result fills data.
+     */
+    private byte[][] everyKth(byte[][] data, int from) {
+        List<byte[]> pages = new ArrayList<byte[]>();
+        for (int i = from; i < data.length; i += stripes.length) {
+            pages.add(data[i]);
+        }
+        return pages.toArray(new byte[pages.size()][]);
+    }
+
+    @Override
+    void setMapped(boolean mapped) {
+        for (PlainTableFile stripe : stripes) {
+            stripe.setMapped(mapped);
+        }
+    }
+
+    @Override
+    boolean isMapped() {
+        return stripes[0].isMapped();
+    }
+
+    @Override
+    void sync() {
+        for (PlainTableFile stripe : stripes) {
+            stripe.sync();
+        }
+    }
+
+    @Override
+    protected int pagesInStorage() {
+        int pages = 0;
+        for (PlainTableFile stripe : stripes) {
+            pages += stripe.pagesInStorage();
+        }
+        return pages;
+    }
+
+    @Override
+    protected void setCapacity(int pages) {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].setCapacity(stripePages(pages, i));
+        }
+    }
+
+    @Override
+    protected void closeFiles() {
+        for (PlainTableFile stripe : stripes) {
+            if (stripe != null) {
+                stripe.closeFiles();
+            }
+        }
+    }
+
+    /*
+     * number of pages stripe i holds when the table has the given number of pages
+     */
+    private int stripePages(int pages, int i) {
+        return pages > i ? (pages - i + stripes.length - 1) / stripes.length : 0;
+    }
+}
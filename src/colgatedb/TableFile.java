@@ -0,0 +1,193 @@
+package colgatedb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The on-disk storage of one table, as seen by {@link DiskManagerImpl}.  A TableFile
+ * stores fixed-size page images by page number; how and where those images are laid
+ * out is up to the subclass.
+ * <p>
+ * The base class keeps the table's page count in memory.  The count is taken from the
+ * files when the table is opened and maintained from then on, so allocation is a
+ * counter bump.  Storage grows in extents: when an allocation runs past the room the
+ * files have, they are extended by a whole extent and the extra pages are handed out by
+ * later allocations.  Unused extent pages are trimmed by {@link #close()}.
+ */
+abstract class TableFile {
+
+    protected final int pageSize;
+    protected volatile int numPages;   // pages allocated so far
+    private int capacityPages;         // pages the storage has room for, including unused extent pages
+
+    TableFile(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Subclasses call this at the end of their constructor, once their files are open.
+     */
+    protected void initPages(int pages) {
+        numPages = pages;
+        capacityPages = pages;
+    }
+
+    int getNumPages() {
+        return numPages;
+    }
+
+    synchronized void allocate(int pageno, int extentPages) {
+        // check that page being allocated is next page in file
+        if (pageno < numPages) {
+            throw new DiskManagerException("Attempting to allocate a page that already exists!" +
+            " You requested that page " + pageno + " be allocated but file has " + numPages + "pages.");
+        } else if (pageno > numPagesAtLeast(pageno)) {
+            throw new DiskManagerException("Attempting to allocate pageno = " + pageno +
+                    " but file currently has only " + numPages + " pages.");
+        }
+        if (numPages == capacityPages) {
+            setCapacity(capacityPages + extentPages);
+            capacityPages += extentPages;
+        }
+        numPages++;
+    }
+
+    /**
+     * Returns the page count, re-reading it from the files first if the count is below
+     * wanted.  The files may have been extended by someone else (e.g., another DiskManager
+     * with the same file registered), so they are consulted before a request past the
+     * cached end is rejected -- and only then.
+     */
+    int numPagesAtLeast(int wanted) {
+        if (wanted > numPages) {
+            synchronized (this) {
+                int pages = pagesInStorage();
+                if (pages > capacityPages) {
+                    numPages = pages;
+                    capacityPages = pages;
+                }
+            }
+        }
+        return numPages;
+    }
+
+    /**
+     * Records that pages up to (but excluding) endPage now exist; a write is allowed to
+     * append the page just past the current end of the table.
+     */
+    synchronized void written(int endPage) {
+        if (endPage > numPages) {
+            numPages = endPage;
+            capacityPages = Math.max(capacityPages, endPage);
+        }
+    }
+
+    /**
+     * Read pages firstPage, firstPage + 1, ... into data[0], data[1], ...  Subclasses that
+     * can move several adjacent pages with one request should override this.
+     */
+    void readPages(int firstPage, byte[][] data) {
+        for (int i = 0; i < data.length; i++) {
+            readPage(firstPage + i, data[i]);
+        }
+    }
+
+    /**
+     * Write data[0], data[1], ... to pages firstPage, firstPage + 1, ...
+     */
+    void writePages(int firstPage, byte[][] data) {
+        for (int i = 0; i < data.length; i++) {
+            writePage(firstPage + i, data[i]);
+        }
+    }
+
+    /**
+     * @see DiskManagerImpl#setMemoryMapped(int, boolean)
+     */
+    void setMapped(boolean mapped) {
+        if (mapped) {
+            throw new DiskManagerException("Memory-mapped reads are not supported by " + getClass().getSimpleName());
+        }
+    }
+
+    boolean isMapped() {
+        return false;
+    }
+
+    /**
+     * Trims unused extent pages, syncs, and closes the underlying files.
+     */
+    synchronized void close() {
+        if (capacityPages > numPages) {
+            setCapacity(numPages);
+            capacityPages = numPages;
+        }
+        sync();
+        closeFiles();
+    }
+
+    /**
+     * Read page pageno into data, which is exactly one page long.
+     */
+    abstract void readPage(int pageno, byte[] data);
+
+    /**
+     * Write data, which is exactly one page long, to page pageno.
+     */
+    abstract void writePage(int pageno, byte[] data);
+
+    abstract void sync();
+
+    /**
+     * @return the number of pages the files currently have room for
+     */
+    protected abstract int pagesInStorage();
+
+    /**
+     * Grow or shrink the files so that they have room for exactly the given number of
+     * pages.  Newly added pages must read back as all zeroes, which is an empty page image.
+     */
+    protected abstract void setCapacity(int pages);
+
+    protected abstract void closeFiles();
+
+    // ------------- helpers for subclasses -------------
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long offset) {
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new DiskManagerException("Unexpected end of file!");
+                }
+            }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new DiskManagerException(e);
+        }
+    }
+}
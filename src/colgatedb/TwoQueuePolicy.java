@@ -0,0 +1,197 @@
+package colgatedb;
+
+import colgatedb.page.PageId;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Scan-resistant 2Q replacement (Johnson and Shasha, VLDB 1994).
+ * <p>
+ * A page read into the pool for the first time joins A1in, a FIFO queue.  Pages evicted from
+ * A1in are remembered, by id only, in A1out.  A page that is read again while A1out still
+ * remembers it has been used twice within a short time, so it joins Am, an LRU list.  Victims
+ * come from A1in while A1in holds more than its share of the pool, and from Am otherwise.
+ * <p>
+ * A sequential scan touches each page once, so its pages pass through A1in and leave again
+ * without disturbing Am, where frequently used pages such as index and catalog pages live.
+ * <p>
+ * Pins of a page shortly after it was read are usually correlated references from the same
+ * operator (a scan pinning the page once per tuple, say) and do not promote it.  A page in A1in
+ * that is used again after a correlation period, measured in pages read since, is promoted to
+ * Am right away.  Without this, pages that are used again and again while they sit in A1in
+ * would never reach Am, because they only pass through A1out once they are evicted.
+ * <p>
+ * Like {@link LruPolicy}, Am is reordered when a page is unpinned, which takes this policy's
+ * lock; pinning takes no lock.
+ */
+public class TwoQueuePolicy implements ReplacementPolicy {
+
+    private static final int NONE = -1;
+    private static final int A1IN = 0;
+    private static final int AM = 1;
+
+    // guarded by this
+    private int[] prev;
+    private int[] next;
+    private int[] queue;            // A1IN, AM or NONE for each frame
+    private PageId[] pids;          // page in each frame, as reported by loaded
+    private final int[] heads = {NONE, NONE};
+    private final int[] tails = {NONE, NONE};
+    private final int[] sizes = {0, 0};
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();   // oldest first
+    private long[] loadedAt;        // value of loads when each frame's page was read
+    private long loads;             // pages read so far
+    private int maxA1in;
+    private int maxA1out;
+    private int correlationPeriod;
+
+    @Override
+    public synchronized void init(int numFrames) {
+        prev = new int[numFrames];
+        next = new int[numFrames];
+        queue = new int[numFrames];
+        pids = new PageId[numFrames];
+        loadedAt = new long[numFrames];
+        Arrays.fill(prev, NONE);
+        Arrays.fill(next, NONE);
+        Arrays.fill(queue, NONE);
+        // the sizes recommended by the paper
+        maxA1in = Math.max(1, numFrames / 4);
+        maxA1out = Math.max(1, numFrames / 2);
+        correlationPeriod = Math.max(1, numFrames / 16);
+    }
+
+    @Override
+    public synchronized void resize(int numFrames) {
+        int oldFrames = prev.length;
+        prev = Arrays.copyOf(prev, numFrames);
+        next = Arrays.copyOf(next, numFrames);
+        queue = Arrays.copyOf(queue, numFrames);
+        pids = Arrays.copyOf(pids, numFrames);
+        loadedAt = Arrays.copyOf(loadedAt, numFrames);
+        Arrays.fill(prev, oldFrames, numFrames, NONE);
+        Arrays.fill(next, oldFrames, numFrames, NONE);
+        Arrays.fill(queue, oldFrames, numFrames, NONE);
+        maxA1in = Math.max(1, numFrames / 4);
+        maxA1out = Math.max(1, numFrames / 2);
+        correlationPeriod = Math.max(1, numFrames / 16);
+    }
+
+    @Override
+    public void pinned(int frame) {
+        // only unpins reorder Am
+    }
+
+    @Override
+    public synchronized void unpinned(int frame) {
+        if (queue[frame] == AM || queue[frame] == A1IN && loads - loadedAt[frame] > correlationPeriod) {
+            unlink(frame);
+            push(frame, AM);
+        } else if (queue[frame] == NONE && pids[frame] != null) {
+            push(frame, AM);    // a victim whose eviction failed
+        }
+    }
+
+    @Override
+    public synchronized void loaded(int frame, PageId pid) {
+        unlink(frame);
+        pids[frame] = pid;
+        loadedAt[frame] = ++loads;
+        push(frame, a1out.remove(pid) ? AM : A1IN);
+    }
+
+    @Override
+    public synchronized void removed(int frame) {
+        unlink(frame);
+        pids[frame] = null;
+    }
+
+    @Override
+    public synchronized int evict(Frames frames) {
+        int first = sizes[A1IN] > maxA1in || sizes[AM] == 0 ? A1IN : AM;
+        int victim = claimFrom(first, frames);
+        if (victim == NONE) {
+            victim = claimFrom(1 - first, frames);
+        }
+        if (victim == NONE) {
+            return NONE;
+        }
+        if (queue[victim] == A1IN) {
+            remember(pids[victim]);
+        }
+        unlink(victim);
+        return victim;
+    }
+
+    /*
+     * claims the oldest claimable frame of the queue, or returns NONE
+     */
+    private int claimFrom(int q, Frames frames) {
+        for (int frame = tails[q]; frame != NONE; frame = prev[frame]) {
+            if (frames.tryClaim(frame)) {
+                return frame;
+            }
+        }
+        return NONE;
+    }
+
+    private void remember(PageId pid) {
+        a1out.add(pid);
+        if (a1out.size() > maxA1out) {
+            Iterator<PageId> oldest = a1out.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private void push(int frame, int q) {
+        next[frame] = heads[q];
+        if (heads[q] != NONE) {
+            prev[heads[q]] = frame;
+        }
+        heads[q] = frame;
+        if (tails[q] == NONE) {
+            tails[q] = frame;
+        }
+        queue[frame] = q;
+        sizes[q]++;
+    }
+
+    private void unlink(int frame) {
+        int q = queue[frame];
+        if (q == NONE) {
+            return;
+        }
+        if (prev[frame] != NONE) {
+            next[prev[frame]] = next[frame];
+        } else {
+            heads[q] = next[frame];
+        }
+        if (next[frame] != NONE) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tails[q] = prev[frame];
+        }
+        prev[frame] = NONE;
+        next[frame] = NONE;
+        queue[frame] = NONE;
+        sizes[q]--;
+    }
+}
@@ -97,12 +97,12 @@ public class HeapFile implements DbFile {
             PageId pid = new SimplePageId(this.tableid, i);
             justAcquired = !accessManager.holdsLock(tid, pid, Permissions.READ_ONLY);
             accessManager.acquireLock(tid, pid, Permissions.READ_ONLY);
-            SlottedPage page = (SlottedPage) accessManager.pinPage(tid, pid,this.pageMaker);
-            if (page.getNumEmptySlots() > 0) {
-                accessManager.unpinPage(tid,page,false);
+            // the read lock keeps writers out, so the page can be read without pinning it
+            int emptySlots = accessManager.readPage(tid, pid, this.pageMaker,
+                    page -> ((SlottedPage) page).getNumEmptySlots());
+            if (emptySlots > 0) {
                 return pid;
             }
-            accessManager.unpinPage(tid, page, false);
             if (justAcquired){
                 accessManager.releaseLock(tid, pid);
             }
@@ -173,6 +173,7 @@ public class HeapFile implements DbFile {
             if(!isOpened){
                 currentPage=0;
                 isOpened=true;
+                Database.getBufferManager().hintSequential(new SimplePageId(tableid, 0), pageMaker);
                 this.pageIterator=getPageIterator(currentPage);
             }
         }
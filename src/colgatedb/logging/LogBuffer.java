@@ -0,0 +1,262 @@
+package colgatedb.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * An in-memory buffer in front of the log file.
+ * <p>
+ * Positions in the buffer are file offsets.  An appender first reserves room for its record
+ * with {@link #reserve(int)}, which only bumps a counter, and then copies the record in with
+ * {@link #fill(long, byte[])}.  Copies run in parallel; a record is published only once every
+ * record before it has been, so the published region is always a run of complete records.
+ * A writer thread drains published bytes to the file in large positional writes.  The buffer
+ * is a ring: an appender waits for the writer if its record does not fit.
+ * <p>
+ * Writing is not forcing: {@link #awaitWritten(long)} only waits for bytes to reach the file;
+ * making them durable is up to the caller.
+ */
+class LogBuffer {
+
+    private final FileChannel channel;
+    private final byte[] ring;
+    private final AtomicLong reserved = new AtomicLong();   // end of the last reservation
+    private final ThreadPoolExecutor writer;
+
+    private final Object latch = new Object();
+    // the following are guarded by latch
+    private long filled;        // every byte before this has been copied in
+    private long written;       // every byte before this has been written to the file
+    private boolean draining;   // a drain task is queued or running
+    private IOException failure;
+
+    /**
+     * @param channel the log file
+     * @param capacity size of the buffer in bytes, and so the largest record it can hold
+     */
+    LogBuffer(FileChannel channel, int capacity) {
+        this.channel = channel;
+        this.ring = new byte[capacity];
+        writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "colgatedb-log-writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Moves the buffer to the given file offset, for instance after the log is truncated or
+     * reopened for recovery.  Must not be called while appends are in progress.
+     */
+    void reset(long offset) {
+        synchronized (latch) {
+            awaitDrained();
+            reserved.set(offset);
+            filled = offset;
+            written = offset;
+        }
+    }
+
+    /**
+     * Reserves room for a record.
+     * @return the file offset at which the record starts
+     */
+    long reserve(int length) {
+        if (length > ring.length) {
+            throw new LogManagerException("Log record of " + length +
+                    " bytes does not fit in the log buffer of " + ring.length + " bytes");
+        }
+        return reserved.getAndAdd(length);
+    }
+
+    /**
+     * Copies a record into the room reserved for it, then publishes it.  Every reservation
+     * must be filled or {@link #abandon abandoned}, or no record after it will ever reach the
+     * file.
+     * @throws LogManagerException if the writer failed or an earlier reservation was abandoned;
+     * the record is then not published
+     */
+    void fill(long start, byte[] record) {
+        long end = start + record.length;
+        boolean interrupted = false;
+        synchronized (latch) {
+            while (end - written > ring.length && failure == null) {
+                interrupted |= waitOnLatch();
+            }
+            if (failure != null) {
+                throw new LogManagerException(failure);
+            }
+        }
+        int from = (int) (start % ring.length);
+        int first = Math.min(record.length, ring.length - from);
+        System.arraycopy(record, 0, ring, from, first);
+        System.arraycopy(record, first, ring, 0, record.length - first);
+        synchronized (latch) {
+            while (filled != start && failure == null) {
+                interrupted |= waitOnLatch();
+            }
+            if (filled != start) {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new LogManagerException(failure);
+            }
+            filled = end;
+            latch.notifyAll();
+            if (!draining && failure == null) {
+                draining = true;
+                writer.execute(this::drain);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gives up on a reservation that will never be filled, because its appender failed after
+     * reserving.  The hole it leaves can never be published, so the buffer fails for good, as it
+     * does when the writer fails: what was published before the hole is still written, but every
+     * later fill and every wait for bytes past the hole throws instead of waiting forever.
+     */
+    void abandon(Throwable cause) {
+        synchronized (latch) {
+            if (failure == null) {
+                failure = new IOException("A reserved log record was never filled", cause);
+            }
+            latch.notifyAll();
+        }
+    }
+
+    /**
+     * @return the end of the last reservation; records before it may still be being copied
+     */
+    long getReserved() {
+        return reserved.get();
+    }
+
+    /**
+     * Waits until every byte before the given offset has been written to the file.
+     * @throws LogManagerException if the writer failed
+     */
+    void awaitWritten(long offset) throws LogManagerException {
+        boolean interrupted = false;
+        synchronized (latch) {
+            while (written < offset && failure == null) {
+                interrupted |= waitOnLatch();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (written < offset) {
+                throw new LogManagerException(failure);
+            }
+        }
+    }
+
+    /**
+     * Writes what has been published and stops the writer thread.
+     */
+    void close() {
+        synchronized (latch) {
+            awaitDrained();
+        }
+        writer.shutdown();
+    }
+
+    /*
+     * Runs on the writer thread.  Each pass writes everything published so far: one positional
+     * write, or two if the published region wraps around the end of the ring.
+     */
+    private void drain() {
+        while (true) {
+            long from, to;
+            synchronized (latch) {
+                from = written;
+                to = filled;
+                if (from == to) {
+                    draining = false;
+                    latch.notifyAll();
+                    return;
+                }
+            }
+            try {
+                int start = (int) (from % ring.length);
+                int length = (int) (to - from);
+                int first = Math.min(length, ring.length - start);
+                ByteBuffer[] runs = {ByteBuffer.wrap(ring, start, first),
+                        ByteBuffer.wrap(ring, 0, length - first)};
+                long position = from;
+                for (ByteBuffer run : runs) {
+                    while (run.hasRemaining()) {
+                        position += channel.write(run, position);
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (latch) {
+                    failure = e;
+                    draining = false;
+                    latch.notifyAll();
+                }
+                return;
+            }
+            synchronized (latch) {
+                written = to;
+                latch.notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Waits until the writer has nothing left to do.  Caller must hold latch.
+     */
+    private void awaitDrained() {
+        boolean interrupted = false;
+        while (draining) {
+            interrupted |= waitOnLatch();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Waits on the latch, which the caller must hold.  Waits here cannot be cut short: a thread
+     * that gave up between reserving and publishing would stall the log for everyone.
+     * @return true if the thread was interrupted while waiting
+     */
+    private boolean waitOnLatch() {
+        try {
+            latch.wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+}
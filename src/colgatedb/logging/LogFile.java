@@ -43,6 +43,20 @@ public interface LogFile {
 
     void logCheckpoint() throws IOException;
 
+    /**
+     * Holds off checkpoints until {@link #endUpdate()}.  A checkpoint flushes the dirty pages and
+     * then logs that the updates before it are on disk, so an update logged before the flush
+     * must have its page marked dirty before the flush too.  Writers therefore call this before
+     * logging an update and endUpdate once its page is marked dirty.  Updates do not exclude
+     * each other.
+     */
+    void beginUpdate();
+
+    /**
+     * Ends what {@link #beginUpdate()} began.
+     */
+    void endUpdate();
+
     void logTruncate() throws IOException;
 
     void shutdown();
@@ -50,4 +64,21 @@ public interface LogFile {
     void recover() throws IOException;
 
     void force() throws LogManagerException;
+
+    /**
+     * Makes every record up to and including the one with the given LSN durable, forcing the
+     * log only if it is not durable already.
+     */
+    void force(long lsn) throws LogManagerException;
+
+    /**
+     * Log sequence numbers (LSNs) increase with every record appended to the log.
+     * @return the LSN of the last record appended, or 0 if there is none
+     */
+    long getCurrentLsn();
+
+    /**
+     * @return the LSN up to which every record is known to be on disk
+     */
+    long getDurableLsn();
 }
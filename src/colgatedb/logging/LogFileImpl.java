@@ -6,13 +6,19 @@ import colgatedb.page.Page;
 import colgatedb.page.PageId;
 import colgatedb.transactions.TransactionId;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * ColgateDB
@@ -53,6 +59,13 @@ import java.util.Set;
  }
  }
  </pre>
+
+ <p>
+ Records are built in memory and appended through a {@link LogBuffer}, which
+ writes them to the file on a background thread.  logWrite and logCLR take no
+ lock at all; BEGIN, COMMIT and ABORT records are reserved under this object's
+ monitor so that they stay in step with the active transactions a checkpoint
+ records.
  */
 
 /**
@@ -101,7 +114,10 @@ public class LogFileImpl implements LogFile {
     final File logFile;
     private RandomAccessFile raf;
     private LogFileRecovery logFileRecovery;
-    Boolean recoveryUndecided; // no call to recover() and no append to log
+    volatile boolean recoveryUndecided; // no call to recover() and no append to log
+    private final LogBuffer buffer;     // records go through here on their way to raf
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
 
     static final long NO_CHECKPOINT_ID = -1;
 
@@ -110,6 +126,20 @@ public class LogFileImpl implements LogFile {
 
     private Set<Long> activeTids = new HashSet<Long>();
 
+    // the LSN of a record is the file offset just past its end; see getCurrentLsn
+    private volatile long durableLsn = 0;   // every record up to this LSN has been forced; written under forceLatch
+    private final Object forceLatch = new Object();     // one force at a time, taken without the log's monitor
+    // shared by updates between logging and marking their page dirty, exclusive for a checkpoint
+    private final ReentrantReadWriteLock checkpointLatch = new ReentrantReadWriteLock();
+
+    // group commit: committing threads wait for one of them, the leader, to force for all of them
+    static final int DEFAULT_GROUP_COMMIT_BATCH = 64;
+    private final Object commitLatch = new Object();
+    private boolean flushing = false;       // a leader is gathering or forcing; guarded by commitLatch
+    private int waitingCommits = 0;         // commits waiting to become durable; guarded by commitLatch
+    private volatile long groupCommitDelayNanos = 0;
+    private volatile int groupCommitBatch = DEFAULT_GROUP_COMMIT_BATCH;
+
     /**
      * Constructor.
      * Initialize and back the log file with the specified file.
@@ -125,6 +155,7 @@ public class LogFileImpl implements LogFile {
     public LogFileImpl(File f) throws IOException {
         this.logFile = f;
         raf = new RandomAccessFile(f, "rw");
+        buffer = new LogBuffer(raf.getChannel(), DEFAULT_BUFFER_SIZE);
         recoveryUndecided = true;
         logFileRecovery = new LogFileRecovery(new RandomAccessFile(logFile, "r"));
 
@@ -141,27 +172,73 @@ public class LogFileImpl implements LogFile {
     }
 
     void preAppend() throws LogManagerException {
-        try {
-            // we're about to append a log record. if we weren't sure whether the
-            // DB wants to do recovery, we're sure now -- it didn't. So truncate
-            // the log.
-            if (recoveryUndecided) {
-                recoveryUndecided = false;
-                raf.seek(0);
-                raf.setLength(0);
-                raf.writeLong(NO_CHECKPOINT_ID);
-                raf.seek(raf.length());
-            }
-            // we're about to append a log record... make sure we're at the end of the log!
-            if (raf.getFilePointer() != raf.length()) {
-                throw new RuntimeException("About to append to log file but not" +
-                        " located at end of log!  Risk overwriting log data!");
+        if (!recoveryUndecided) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                // we're about to append a log record. if we weren't sure whether the
+                // DB wants to do recovery, we're sure now -- it didn't. So truncate
+                // the log.
+                if (recoveryUndecided) {
+                    raf.seek(0);
+                    raf.setLength(0);
+                    raf.writeLong(NO_CHECKPOINT_ID);
+                    buffer.reset(raf.length());
+                    recoveryUndecided = false;
+                }
+            } catch (IOException e) {
+                throw new LogManagerException(e);
             }
-        } catch (IOException e) {
-            throw new LogManagerException(e);
         }
     }
 
+    /**
+     * A log record being built in memory.  Callers write the record's contents to out; the
+     * start offset that ends every record is added when it is appended.
+     */
+    private static class LogRecord {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        LogRecord(int type, long tid) throws IOException {
+            out.writeInt(type);
+            out.writeLong(tid);
+        }
+
+        byte[] seal() throws IOException {
+            out.writeLong(0);   // room for the start offset
+            return bytes.toByteArray();
+        }
+    }
+
+    /*
+     * Reserves room for a sealed record in the log buffer and fills in its start offset.
+     * Records whose order matters relative to activeTids are reserved under the monitor.
+     * The record must be sealed first, and filled right after: a reservation that is never
+     * filled stalls every record after it.
+     */
+    private long reserve(byte[] record) {
+        long start = buffer.reserve(record.length);
+        ByteBuffer.wrap(record).putLong(record.length - LONG_SIZE, start);
+        return start;
+    }
+
+    /*
+     * Copies a reserved record into the log buffer.
+     * @return the record's LSN
+     */
+    private long fill(long start, byte[] record) {
+        buffer.fill(start, record);
+        return start + record.length;
+    }
+
+    private long append(LogRecord record) throws IOException {
+        preAppend();
+        byte[] bytes = record.seal();
+        return fill(reserve(bytes), bytes);
+    }
+
     private void checkActive(TransactionId tid, boolean shouldBeActive) throws LogManagerException {
         // should check for active but many test cases do not explicitly start and stop
         // transactions and so checking for active can cause tests to fail
@@ -174,35 +251,120 @@ public class LogFileImpl implements LogFile {
      * @param tid The transaction that is beginning
      */
     @Override
-    public synchronized void logXactionBegin(TransactionId tid)
+    public void logXactionBegin(TransactionId tid)
             throws IOException {
         checkActive(tid, false);
         preAppend();
-        Long recordStart = raf.getFilePointer();
-        raf.writeInt(LogType.BEGIN_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(recordStart);
-        activeTids.add(tid.getId());
+        byte[] record = new LogRecord(LogType.BEGIN_RECORD, tid.getId()).seal();
+        long start;
+        synchronized (this) {
+            activeTids.add(tid.getId());
+            start = reserve(record);    // last, so that nothing can fail between reserve and fill
+        }
+        fill(start, record);
     }
 
     /**
      * Write a commit record to disk for the specified tid,
      * and force the log to disk.
+     * <p>
+     * The record is appended under the log's monitor, but the wait for it to become durable is
+     * not: concurrent commits share a force (group commit).  See {@link #setGroupCommit}.
      *
      * @param tid The committing transaction.
      */
     @Override
-    public synchronized void logCommit(TransactionId tid) throws IOException {
+    public void logCommit(TransactionId tid) throws IOException {
         //should we verify that this is a live transaction?
         checkActive(tid, true);
         preAppend();
+        byte[] record = new LogRecord(LogType.COMMIT_RECORD, tid.getId()).seal();
+        long start;
+        synchronized (this) {
+            // a checkpoint lists the active transactions, so the commit record and the
+            // removal must not be separated by one
+            activeTids.remove(tid.getId());
+            start = reserve(record);    // last, so that nothing can fail between reserve and fill
+        }
+        awaitDurable(fill(start, record));
+    }
 
-        Long recordStart = raf.getFilePointer();
-        raf.writeInt(LogType.COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(recordStart);
-        force();
-        activeTids.remove(tid.getId());
+    /**
+     * Configures group commit.  The first commit to find no force under way becomes the leader:
+     * it waits up to maxDelayMicros for more commits to arrive, stopping early once maxBatch
+     * commits are waiting, and then forces the log once for all of them.  Commits arriving while
+     * the leader forces are picked up by the next leader.  A delay of 0 (the default) never
+     * waits, and batches only the commits that pile up behind a force.
+     *
+     * @param maxDelayMicros longest a leader waits before forcing
+     * @param maxBatch number of waiting commits that ends the leader's wait early
+     */
+    public void setGroupCommit(long maxDelayMicros, int maxBatch) {
+        if (maxDelayMicros < 0 || maxBatch < 1) {
+            throw new IllegalArgumentException("delay must be at least 0 and batch at least 1");
+        }
+        groupCommitDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        groupCommitBatch = maxBatch;
+    }
+
+    /*
+     * Returns once the record with the given LSN is durable, forcing the log as the leader if
+     * no other commit is already doing so.
+     */
+    private void awaitDurable(long lsn) throws LogManagerException {
+        synchronized (commitLatch) {
+            waitingCommits++;
+            commitLatch.notifyAll();    // a leader gathering a batch may now have enough
+        }
+        try {
+            while (durableLsn < lsn) {
+                synchronized (commitLatch) {
+                    if (durableLsn >= lsn) {
+                        break;
+                    }
+                    if (flushing) {
+                        try {
+                            commitLatch.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new LogManagerException("Interrupted waiting for commit to become durable");
+                        }
+                        continue;
+                    }
+                    flushing = true;
+                    gatherCommits();
+                }
+                try {
+                    force();
+                } finally {
+                    synchronized (commitLatch) {
+                        flushing = false;
+                        commitLatch.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            synchronized (commitLatch) {
+                waitingCommits--;
+            }
+        }
+    }
+
+    /*
+     * The leader's wait for more commits to join its force.  Caller must hold commitLatch.
+     */
+    private void gatherCommits() {
+        long remaining = groupCommitDelayNanos;
+        long deadline = System.nanoTime() + remaining;
+        while (waitingCommits < groupCommitBatch && remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(commitLatch, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();     // stop gathering, but still force
+                return;
+            }
+            remaining = deadline - System.nanoTime();
+        }
     }
 
     /**
@@ -225,7 +387,7 @@ public class LogFileImpl implements LogFile {
                 // must do this here, since rollback only works for
                 // live transactions (needs tidToFirstLogRecord)
                 force();
-                logFileRecovery.rollback(tid);
+                logFileRecovery.rollback(tid, durableLsn);
             }
         }
     }
@@ -239,11 +401,7 @@ public class LogFileImpl implements LogFile {
      */
     @Override
     public synchronized void logAbort(Long tid) throws IOException {
-        preAppend();
-        Long recordStart = raf.getFilePointer();
-        raf.writeInt(LogType.ABORT_RECORD);
-        raf.writeLong(tid);
-        raf.writeLong(recordStart);
+        append(new LogRecord(LogType.ABORT_RECORD, tid));
         force();
         activeTids.remove(tid);
     }
@@ -258,11 +416,10 @@ public class LogFileImpl implements LogFile {
      * @see Page#getBeforeImage
      */
     @Override
-    public synchronized void logWrite(TransactionId tid, Page before,
-                                      Page after)
+    public void logWrite(TransactionId tid, Page before,
+                         Page after)
             throws LogManagerException {
         checkActive(tid, true);
-        preAppend();
         /* update record consists of
 
            record type
@@ -273,12 +430,10 @@ public class LogFileImpl implements LogFile {
         */
 
         try {
-            Long recordStart = raf.getFilePointer();
-            raf.writeInt(LogType.UPDATE_RECORD);
-            raf.writeLong(tid.getId());
-            writePageData(raf, before);
-            writePageData(raf, after);
-            raf.writeLong(recordStart);
+            LogRecord record = new LogRecord(LogType.UPDATE_RECORD, tid.getId());
+            writePageData(record.out, before);
+            writePageData(record.out, after);
+            append(record);
         } catch (IOException e) {
             throw new LogManagerException(e);
         }
@@ -293,7 +448,7 @@ public class LogFileImpl implements LogFile {
      * @see Page#getBeforeImage
      */
     @Override
-    public synchronized void logCLR(TransactionId tid, Page after)
+    public void logCLR(TransactionId tid, Page after)
             throws IOException {
         logCLR(tid.getId(), after);
     }
@@ -308,11 +463,10 @@ public class LogFileImpl implements LogFile {
      * @see Page#getBeforeImage
      */
     @Override
-    public synchronized void logCLR(Long tid, Page after)
+    public void logCLR(Long tid, Page after)
             throws IOException {
 
         // transaction may be active or we may be in recovery mode
-        preAppend();
         /* update record consists of
 
            record type
@@ -320,15 +474,13 @@ public class LogFileImpl implements LogFile {
            after page data (see writePageData)
            start offset
         */
-        Long recordStart = raf.getFilePointer();
-        raf.writeInt(LogType.CLR_RECORD);
-        raf.writeLong(tid);
-        writePageData(raf, after);
-        raf.writeLong(recordStart);
+        LogRecord record = new LogRecord(LogType.CLR_RECORD, tid);
+        writePageData(record.out, after);
+        append(record);
     }
 
 
-    static void writePageData(RandomAccessFile raf, Page p) throws IOException {
+    static void writePageData(DataOutput raf, Page p) throws IOException {
         PageId pid = p.getId();
         int pageInfo[] = pid.serialize();
 
@@ -411,29 +563,33 @@ public class LogFileImpl implements LogFile {
     public void logCheckpoint() throws IOException {
         //make sure we have buffer pool lock before proceeding
         synchronized (Database.getAccessManager()) {
-            synchronized (this) {
-                preAppend();
-                long startCpOffset, endCpOffset;
-
-                force();
-                Database.getBufferManager().flushAllPages();
-                startCpOffset = raf.getFilePointer();
-                raf.writeInt(LogType.CHECKPOINT_RECORD);
-                raf.writeLong(-1); //no tid , but leave space for convenience
-
-                //write list of outstanding transactions
-                raf.writeInt(activeTids.size());
-                for (Long key : activeTids) {
-                    raf.writeLong(key);
+            // no update may be logged between the flush and the checkpoint record; see beginUpdate
+            checkpointLatch.writeLock().lock();
+            try {
+                synchronized (this) {
+                    force();
+                    Database.getBufferManager().flushAllPages();
+                    LogRecord record = new LogRecord(LogType.CHECKPOINT_RECORD, -1); //no tid , but leave space for convenience
+
+                    //write list of outstanding transactions
+                    record.out.writeInt(activeTids.size());
+                    for (Long key : activeTids) {
+                        record.out.writeLong(key);
+                    }
+                    preAppend();
+                    byte[] bytes = record.seal();
+                    long startCpOffset = reserve(bytes);
+                    force(fill(startCpOffset, bytes));
+
+                    //once the CP is durable, make sure the CP location at the
+                    // beginning of the log file is updated
+                    ByteBuffer header = ByteBuffer.allocate(LONG_SIZE).putLong(0, startCpOffset);
+                    while (header.hasRemaining()) {
+                        raf.getChannel().write(header, header.position());
+                    }
                 }
-
-                //once the CP is written, make sure the CP location at the
-                // beginning of the log file is updated
-                endCpOffset = raf.getFilePointer();
-                raf.seek(0);
-                raf.writeLong(startCpOffset);
-                raf.seek(endCpOffset);
-                raf.writeLong(startCpOffset);
+            } finally {
+                checkpointLatch.writeLock().unlock();
             }
         }
 
@@ -441,6 +597,16 @@ public class LogFileImpl implements LogFile {
         logTruncate();
     }
 
+    @Override
+    public void beginUpdate() {
+        checkpointLatch.readLock().lock();
+    }
+
+    @Override
+    public void endUpdate() {
+        checkpointLatch.readLock().unlock();
+    }
+
     /**
      * Truncate any unneeded portion of the log to reduce its space
      * consumption
@@ -459,6 +625,7 @@ public class LogFileImpl implements LogFile {
     public synchronized void shutdown() {
         try {
             logCheckpoint();  //simple way to shutdown is to write a checkpoint record
+            buffer.close();
             raf.close();
         } catch (IOException e) {
             System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
@@ -476,19 +643,71 @@ public class LogFileImpl implements LogFile {
         synchronized (Database.getAccessManager()) {
             synchronized (this) {
                 recoveryUndecided = false;
-                raf.seek(raf.length());      // go to end of log file
+                buffer.reset(raf.length());      // append at the end of log file
+                durableLsn = raf.length();
                 logFileRecovery.recover();
             }
         }
     }
 
+    /**
+     * Forces every record appended so far: waits for the log buffer to write them, then syncs
+     * the file.  Appends carry on during the force; a caller whose records were made durable by
+     * a force that was already under way returns without forcing again.
+     */
     @Override
-    public synchronized void force() throws LogManagerException {
-        try {
-            raf.getChannel().force(true);
-        } catch (IOException e) {
-            throw new LogManagerException(e);
+    public void force() throws LogManagerException {
+        long lsn = buffer.getReserved();
+        if (lsn <= durableLsn) {
+            return;
+        }
+        buffer.awaitWritten(lsn);
+        synchronized (forceLatch) {
+            if (lsn <= durableLsn) {
+                return;
+            }
+            try {
+                raf.getChannel().force(true);
+            } catch (IOException e) {
+                throw new LogManagerException(e);
+            }
+            durableLsn = lsn;
+        }
+    }
+
+    /**
+     * Forces the log only if the record with the given LSN is not durable yet.  The check
+     * takes no lock, so callers whose records are already durable never wait for an append.
+     */
+    @Override
+    public void force(long lsn) throws LogManagerException {
+        if (lsn > durableLsn) {
+            force();
+        }
+    }
+
+    /**
+     * Simulates a crash of the machine, for tests.  The log file is closed at once, without
+     * writing what is still in the log buffer, and cut back to the last force: records the writer
+     * got to but that were never forced may not have reached the disk either.
+     */
+    void crash() throws IOException {
+        raf.close();    // waits for a write under way; the writer fails any later one
+        if (!recoveryUndecided) {
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                file.setLength(Math.max(durableLsn, LONG_SIZE));
+            }
         }
     }
 
+    @Override
+    public long getCurrentLsn() {
+        return buffer.getReserved();
+    }
+
+    @Override
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
 }
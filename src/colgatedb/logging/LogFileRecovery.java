@@ -35,6 +35,7 @@ import java.util.Set;
  */
 public class LogFileRecovery {
     HashSet<Long> losers = new HashSet<Long>();
+    private final Set<Integer> installedTables = new HashSet<Integer>();  // tables written since the last sync
     private final RandomAccessFile readOnlyLog;
 
     /**
@@ -116,19 +117,22 @@ public class LogFileRecovery {
      * the BufferPool are locked.
      *
      * @param tidToRollback The transaction to rollback
+     * @param logEnd the end of the durable log, which holds all of the transaction's records;
+     *               other transactions may still be appending beyond it
      * @throws java.io.IOException if tidToRollback has already committed
      */
-    public void rollback(TransactionId tidToRollback) throws IOException {
+    public void rollback(TransactionId tidToRollback, long logEnd) throws IOException {
         LinkedList<Long> backwardQueue = new LinkedList<Long>();
+        boolean begun = false;
         readOnlyLog.seek(0);
         readOnlyLog.readLong();
-        while (readOnlyLog.getFilePointer()<readOnlyLog.length()){
+        while (readOnlyLog.getFilePointer()<logEnd){
             int type = readOnlyLog.readInt();
             long tid = readOnlyLog.readLong();
             switch (type) {
                 case LogType.BEGIN_RECORD:
                     if (tidToRollback.getId()==tid){
-                        Database.getLogFile().logAbort(tidToRollback.getId());
+                        begun = true;
                     }
                     break;
                 case LogType.COMMIT_RECORD:
@@ -165,14 +169,22 @@ public class LogFileRecovery {
             Page beforeImg = LogFileImpl.readPageData(readOnlyLog);
             reset(tidToRollback,beforeImg);
         }
+        // the abort record goes after the CLRs, as it does when recovery undoes a loser, and
+        // forcing it makes them durable: a crash must not keep the abort but lose the undo
+        if (begun) {
+            Database.getLogFile().logAbort(tidToRollback.getId());
+        }
+        syncInstalled();
     }
 
     /*
-     *  helper function to rollback
+     *  helper function to rollback.  The page is discarded before the before image is installed,
+     *  so that no write of the aborted page, by an eviction or the cleaner, can land on top of it.
+     *  rollback syncs the installed images once it is done.
      */
     private void reset(TransactionId tidToRollback, Page beforeImg) throws IOException{
-        Database.getDiskManager().writePage(beforeImg);
         Database.getBufferManager().discardPage(beforeImg.getId());
+        install(beforeImg);
         Database.getLogFile().logCLR(tidToRollback, beforeImg);
     }
 
@@ -192,6 +204,24 @@ public class LogFileRecovery {
             undo(offSet);
         }
         losers.clear();
+        syncInstalled();
+    }
+
+    /*
+     * Writes a page image from the log to disk.  Pages are written around the buffer pool, and
+     * with NO-FORCE a later checkpoint flushes only what is in the pool; so every installed
+     * image must be synced before the log records that produced it can stop being replayed.
+     */
+    private void install(Page page) {
+        Database.getDiskManager().writePage(page);
+        installedTables.add(page.getId().getTableId());
+    }
+
+    private void syncInstalled() {
+        for (Integer tableid : installedTables) {
+            Database.getDiskManager().sync(tableid);
+        }
+        installedTables.clear();
     }
 
     /*
@@ -253,11 +283,11 @@ public class LogFileRecovery {
                 case LogType.UPDATE_RECORD:
                     LogFileImpl.readPageData(readOnlyLog);
                     Page afterImg = LogFileImpl.readPageData(readOnlyLog);  // after image
-                    Database.getDiskManager().writePage(afterImg);
+                    install(afterImg);
                     break;
                 case LogType.CLR_RECORD:
                     afterImg = LogFileImpl.readPageData(readOnlyLog);  // after image
-                    Database.getDiskManager().writePage(afterImg);
+                    install(afterImg);
                     break;
                 case LogType.CHECKPOINT_RECORD:
                     int count = readOnlyLog.readInt();
@@ -331,7 +361,7 @@ public class LogFileRecovery {
             Database.getLogFile().logAbort(tid);
         } else if (type == LogType.UPDATE_RECORD) {
             Page beforeImg = LogFileImpl.readPageData(readOnlyLog);
-            Database.getDiskManager().writePage(beforeImg);
+            install(beforeImg);
             Database.getLogFile().logCLR(tid, beforeImg);
             LogFileImpl.readPageData(readOnlyLog);  // after image
         }
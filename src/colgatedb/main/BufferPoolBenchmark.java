@@ -0,0 +1,121 @@
+package colgatedb.main;
+
+import colgatedb.BufferManager;
+import colgatedb.BufferManagerImpl;
+import colgatedb.ClockPolicy;
+import colgatedb.DiskManagerImpl;
+import colgatedb.LruPolicy;
+import colgatedb.ReplacementPolicy;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import colgatedb.page.SlottedPageMaker;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BufferPoolBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int TABLE_PAGES = 1024;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+    private static final int PINS_PER_THREAD = 1000000;
+
+    /**
+     * Measures the hit path of the buffer pool: every page of the table fits in the pool, so
+     * after a warm-up pass each pin is a hit, and the benchmark reports pins per second as the
+     * number of threads grows, once with LRU and once with CLOCK replacement.  Throughput
+     * should grow with the number of threads up to the number of cores on the machine.  LRU
+     * takes a lock each time a page is unpinned, while CLOCK only sets a bit on each pin.
+     * <p>
+     * Usage: BufferPoolBenchmark [directory for the table file]
+     */
+    public static void main(String[] argv) throws Exception {
+        File dir = new File(argv.length > 0 ? argv[0] : System.getProperty("java.io.tmpdir"));
+        File dataFile = File.createTempFile("bufferpool", ".dat", dir);
+        dataFile.deleteOnExit();
+        PageMaker pageMaker = new SlottedPageMaker(new TupleDesc(new Type[]{Type.INT_TYPE}), PAGE_SIZE);
+        int tableid = 0;
+
+        DiskManagerImpl dm = new DiskManagerImpl(PAGE_SIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(pageMaker.makePage(pid));
+        }
+        BufferManager lru = newBufferManager(dm, new LruPolicy(), tableid, pageMaker);
+        BufferManager clock = newBufferManager(dm, new ClockPolicy(), tableid, pageMaker);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " +
+                PINS_PER_THREAD + " pins per thread, all hits");
+        System.out.printf("%10s %18s %18s%n", "threads", "LRU pins/s", "CLOCK pins/s");
+        for (int threads : THREAD_COUNTS) {
+            System.out.printf("%10d %18.0f %18.0f%n", threads, run(lru, threads, tableid, pageMaker),
+                    run(clock, threads, tableid, pageMaker));
+        }
+        dm.close();
+    }
+
+    /*
+     * a buffer pool that holds the whole table, warmed up so that every pin is a hit
+     */
+    private static BufferManager newBufferManager(DiskManagerImpl dm, ReplacementPolicy policy,
+                                                  int tableid, PageMaker pageMaker) {
+        BufferManager bm = new BufferManagerImpl(TABLE_PAGES, dm, policy);
+        pinRandomPages(bm, tableid, pageMaker, TABLE_PAGES * 4, new Random(0));
+        return bm;
+    }
+
+    private static double run(final BufferManager bm, int threads, final int tableid,
+                              final PageMaker pageMaker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    pinRandomPages(bm, tableid, pageMaker, PINS_PER_THREAD, new Random(seed));
+                    return null;
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return (double) threads * PINS_PER_THREAD / (elapsed / 1e9);
+    }
+
+    private static void pinRandomPages(BufferManager bm, int tableid, PageMaker pageMaker, int count, Random random) {
+        for (int i = 0; i < count; i++) {
+            SimplePageId pid = new SimplePageId(tableid, random.nextInt(TABLE_PAGES));
+            bm.pinPage(pid, pageMaker);
+            bm.unpinPage(pid, false);
+        }
+    }
+}
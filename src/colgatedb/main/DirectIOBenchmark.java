@@ -0,0 +1,103 @@
+package colgatedb.main;
+
+import colgatedb.BufferManager;
+import colgatedb.BufferManagerImpl;
+import colgatedb.DiskManagerImpl;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import colgatedb.page.SlottedPageMaker;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class DirectIOBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int TABLE_PAGES = 8192;            // a 32 MB table
+    private static final int[] POOL_SIZES = {64, 512, 4096};
+    private static final int READS = 200000;
+
+    /**
+     * Compares buffered and direct I/O by pinning pages of one table in a skewed random order
+     * (80% of requests go to 20% of the pages) through buffer pools of several sizes.
+     * <p>
+     * With buffered I/O, pages evicted from the pool are usually still in the OS page cache,
+     * so misses are cheap but memory holds two copies of the hot pages.  With direct I/O
+     * every miss goes to the device, so the numbers show how large the pool must be before
+     * direct I/O catches up.  Run it on a machine where the table file does not live on tmpfs,
+     * or direct I/O falls back to buffered and the two columns measure the same thing.
+     * <p>
+     * Usage: DirectIOBenchmark [directory for the table file]
+     */
+    public static void main(String[] argv) throws IOException {
+        File dir = new File(argv.length > 0 ? argv[0] : System.getProperty("java.io.tmpdir"));
+        File dataFile = File.createTempFile("directio", ".dat", dir);
+        dataFile.deleteOnExit();
+        PageMaker pageMaker = new SlottedPageMaker(new TupleDesc(new Type[]{Type.INT_TYPE}), PAGE_SIZE);
+        int tableid = 0;
+
+        DiskManagerImpl loader = new DiskManagerImpl(PAGE_SIZE);
+        loader.setExtentSize(256);
+        loader.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            loader.allocatePage(pid);
+            loader.writePage(pageMaker.makePage(pid));
+        }
+        loader.close();
+
+        System.out.println("table: " + TABLE_PAGES + " pages of " + PAGE_SIZE + " bytes, " + READS + " pins per run");
+        System.out.printf("%10s %18s %18s%n", "pool", "buffered pins/s", "direct pins/s");
+        for (int poolSize : POOL_SIZES) {
+            double buffered = run(false, poolSize, dataFile, tableid, pageMaker);
+            double direct = run(true, poolSize, dataFile, tableid, pageMaker);
+            System.out.printf("%10d %18.0f %18.0f%n", poolSize, buffered, direct);
+        }
+    }
+
+    /*
+     * returns pins per second, measured after one warm-up pass to fill the pool
+     */
+    private static double run(boolean direct, int poolSize, File dataFile, int tableid, PageMaker pageMaker) {
+        DiskManagerImpl dm = new DiskManagerImpl(PAGE_SIZE);
+        dm.setDirectIO(direct);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        if (direct && !dm.isDirectIO(tableid)) {
+            System.out.println("(direct I/O is not available here; falling back to buffered I/O)");
+        }
+        BufferManager bm = new BufferManagerImpl(poolSize, dm);
+        pinRandomPages(bm, tableid, pageMaker, READS / 4, new Random(1));
+        long start = System.nanoTime();
+        pinRandomPages(bm, tableid, pageMaker, READS, new Random(2));
+        long elapsed = System.nanoTime() - start;
+        dm.close();
+        return READS / (elapsed / 1e9);
+    }
+
+    private static void pinRandomPages(BufferManager bm, int tableid, PageMaker pageMaker, int count, Random random) {
+        int hotPages = TABLE_PAGES / 5;
+        for (int i = 0; i < count; i++) {
+            int pageno = random.nextInt(10) < 8 ? random.nextInt(hotPages) : hotPages + random.nextInt(TABLE_PAGES - hotPages);
+            SimplePageId pid = new SimplePageId(tableid, pageno);
+            bm.pinPage(pid, pageMaker);
+            bm.unpinPage(pid, false);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package colgatedb.main;
+
+import colgatedb.BufferManager;
+import colgatedb.BufferManagerImpl;
+import colgatedb.ClockPolicy;
+import colgatedb.DiskManagerImpl;
+import colgatedb.LruPolicy;
+import colgatedb.ReplacementPolicy;
+import colgatedb.TwoQueuePolicy;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import colgatedb.page.SlottedPageMaker;
+import colgatedb.tuple.TupleDesc;
+import colgatedb.tuple.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ReplacementBenchmark {
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int TABLE_PAGES = 4096;
+    private static final int POOL_SIZE = 256;
+    private static final int HOT_PAGES = 128;       // pages used by point lookups; they fit in the pool
+    private static final int ROUNDS = 20;
+    private static final int LOOKUPS_PER_ROUND = 5000;
+
+    /**
+     * Compares replacement policies on a workload that mixes point lookups with full scans.
+     * Each round performs a batch of lookups spread over a small set of hot pages, followed by
+     * one scan of the whole table, which is much larger than the buffer pool.  The benchmark
+     * reports the hit ratio of the lookups and of all pins for each policy.
+     * <p>
+     * Under LRU and CLOCK each scan flushes the hot pages out of the pool, so every round's
+     * lookups start cold.  A scan-resistant policy keeps the hot pages resident across scans.
+     * <p>
+     * Usage: ReplacementBenchmark [directory for the table file]
+     */
+    public static void main(String[] argv) throws IOException {
+        File dir = new File(argv.length > 0 ? argv[0] : System.getProperty("java.io.tmpdir"));
+        File dataFile = File.createTempFile("replacement", ".dat", dir);
+        dataFile.deleteOnExit();
+        PageMaker pageMaker = new SlottedPageMaker(new TupleDesc(new Type[]{Type.INT_TYPE}), PAGE_SIZE);
+        int tableid = 0;
+
+        DiskManagerImpl dm = new DiskManagerImpl(PAGE_SIZE);
+        dm.setExtentSize(256);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < TABLE_PAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(pageMaker.makePage(pid));
+        }
+
+        System.out.println("table: " + TABLE_PAGES + " pages, pool: " + POOL_SIZE + " pages, " +
+                ROUNDS + " rounds of " + LOOKUPS_PER_ROUND + " lookups on " + HOT_PAGES + " pages and one scan");
+        System.out.printf("%10s %18s %18s%n", "policy", "lookup hit ratio", "total hit ratio");
+        run("LRU", new LruPolicy(), dm, tableid, pageMaker);
+        run("CLOCK", new ClockPolicy(), dm, tableid, pageMaker);
+        run("2Q", new TwoQueuePolicy(), dm, tableid, pageMaker);
+        dm.close();
+    }
+
+    private static void run(String name, ReplacementPolicy policy, DiskManagerImpl dm, int tableid,
+                            PageMaker pageMaker) {
+        BufferManager bm = new BufferManagerImpl(POOL_SIZE, dm, policy);
+        Random random = new Random(0);
+        long lookups = 0;
+        long lookupMisses = 0;
+        long pins = 0;
+        long misses = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = dm.getTotalStats().getPagesRead();
+            for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+                pin(bm, new SimplePageId(tableid, random.nextInt(HOT_PAGES)), pageMaker);
+            }
+            long lookupReads = dm.getTotalStats().getPagesRead() - before;
+            for (int i = 0; i < TABLE_PAGES; i++) {
+                pin(bm, new SimplePageId(tableid, i), pageMaker);
+            }
+            if (round > 0) {    // the first round only warms up the pool
+                lookups += LOOKUPS_PER_ROUND;
+                lookupMisses += lookupReads;
+                pins += LOOKUPS_PER_ROUND + TABLE_PAGES;
+                misses += dm.getTotalStats().getPagesRead() - before;
+            }
+        }
+        System.out.printf("%10s %18.3f %18.3f%n", name, 1 - (double) lookupMisses / lookups,
+                1 - (double) misses / pins);
+    }
+
+    private static void pin(BufferManager bm, SimplePageId pid, PageMaker pageMaker) {
+        bm.pinPage(pid, pageMaker);
+        bm.unpinPage(pid, false);
+    }
+}
@@ -164,4 +164,36 @@ public class AccessManagerTest extends AccessManagerTestBase {
         assertEquals(0, bm.pinCount(pid0));
     }
 
+    @Test
+    public void testOnlyRemainingPinsDroppedOnAbort() throws TransactionAbortedException {
+        am.acquireLock(tid0, pid0, Permissions.READ_ONLY);
+        am.acquireLock(tid0, pid1, Permissions.READ_ONLY);
+        MockPage page0 = (MockPage) am.pinPage(tid0, pid0, pm);
+        am.pinPage(tid0, pid0, pm);
+        MockPage page1 = (MockPage) am.pinPage(tid0, pid1, pm);
+        am.unpinPage(tid0, page0, false);
+        am.unpinPage(tid0, page1, false);
+
+        // another transaction's pin must survive
+        am.pinPage(tid1, pid1, pm);
+
+        am.transactionComplete(tid0, false); // abort
+
+        assertEquals(0, bm.pinCount(pid0));
+        assertEquals(1, bm.pinCount(pid1));
+    }
+
+    @Test
+    public void testPagesUnpinnedOnCommit() throws TransactionAbortedException {
+        am.acquireLock(tid0, pid0, Permissions.READ_ONLY);
+        for (int i = 0; i < 10000; i++) {
+            am.pinPage(tid0, pid0, pm);
+        }
+        assertEquals(10000, bm.pinCount(pid0));
+
+        am.transactionComplete(tid0, true); // commit
+
+        assertEquals(0, bm.pinCount(pid0));
+    }
+
 }
@@ -0,0 +1,187 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class AsyncDiskManagerTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 20;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private AsyncDiskManager dm;
+    private File dataFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dataFile = File.createTempFile("asyncdmtest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new AsyncDiskManager(PAGESIZE, 2);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            dm.allocatePage(new SimplePageId(tableid, i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    @Test
+    public void readYourWrites() {
+        // whether or not the write has reached the disk yet, a read must see it
+        for (int round = 1; round <= 5; round++) {
+            for (int i = 0; i < NUMPAGES; i++) {
+                SimplePageId pid = new SimplePageId(tableid, i);
+                dm.writePage(new BytePage(pid, round * i));
+                assertEquals(new BytePage(pid, round * i), dm.readPage(pid, pm));
+            }
+        }
+    }
+
+    @Test
+    public void syncWaitsForWrites() {
+        for (int i = 0; i < NUMPAGES; i++) {
+            dm.writePage(new BytePage(new SimplePageId(tableid, i), i + 1));
+        }
+        dm.sync(tableid);
+
+        // a fresh, synchronous disk manager sees every write
+        DiskManagerImpl other = new DiskManagerImpl(PAGESIZE);
+        other.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            assertEquals(new BytePage(pid, i + 1), other.readPage(pid, pm));
+        }
+        other.close();
+    }
+
+    @Test
+    public void lastWriteWins() {
+        SimplePageId pid = new SimplePageId(tableid, 3);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(dm.writePageAsync(new BytePage(pid, i)));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.join();
+        }
+        dm.flush();
+        DiskManagerImpl other = new DiskManagerImpl(PAGESIZE);
+        other.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(new BytePage(pid, 49), other.readPage(pid, pm));
+        other.close();
+    }
+
+    @Test
+    public void asyncReads() {
+        for (int i = 0; i < NUMPAGES; i++) {
+            dm.writePage(new BytePage(new SimplePageId(tableid, i), i));
+        }
+        dm.flush();
+        List<CompletableFuture<Page>> futures = new ArrayList<>();
+        for (int i = 0; i < NUMPAGES; i++) {
+            futures.add(dm.readPageAsync(new SimplePageId(tableid, i), pm));
+        }
+        for (int i = 0; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            assertEquals(new BytePage(pid, i), futures.get(i).join());
+        }
+    }
+
+    @Test
+    public void failedWriteIsReportedBySync() {
+        // the page lies beyond the end of the file, so the write fails on an I/O thread
+        SimplePageId pid = new SimplePageId(tableid, NUMPAGES + 1);
+        dm.writePage(new BytePage(pid, 7));
+        try {
+            dm.sync(tableid);
+            fail("sync should report the failed write");
+        } catch (DiskManagerException e) {
+            // expected
+        }
+        assertEquals(new BytePage(pid, 7), dm.readPage(pid, pm));   // still pending after the report
+        try {
+            dm.sync(tableid);
+            fail("sync should retry the failed write, and report it again");
+        } catch (DiskManagerException e) {
+            // expected
+        }
+        dm.allocatePage(new SimplePageId(tableid, NUMPAGES));
+        dm.sync(tableid);   // the retry now succeeds
+
+        DiskManagerImpl other = new DiskManagerImpl(PAGESIZE);
+        other.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(new BytePage(pid, 7), other.readPage(pid, pm));
+        other.close();
+    }
+
+    @Test
+    public void failedWriteIsReportedByFlush() {
+        SimplePageId pid = new SimplePageId(tableid, NUMPAGES + 1);
+        dm.writePage(new BytePage(pid, 7));
+        try {
+            dm.flush();
+            fail("flush should report the failed write");
+        } catch (DiskManagerException e) {
+            // expected
+        }
+        dm.allocatePage(new SimplePageId(tableid, NUMPAGES));
+        dm.flush();
+        dm.sync(tableid);
+
+        DiskManagerImpl other = new DiskManagerImpl(PAGESIZE);
+        other.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(new BytePage(pid, 7), other.readPage(pid, pm));
+        other.close();
+    }
+
+    @Test
+    public void laterWriteReplacesFailedWrite() {
+        SimplePageId pid = new SimplePageId(tableid, NUMPAGES + 1);
+        dm.writePage(new BytePage(pid, 7));
+        try {
+            dm.flush();
+            fail("flush should report the failed write");
+        } catch (DiskManagerException e) {
+            // expected
+        }
+        dm.allocatePage(new SimplePageId(tableid, NUMPAGES));
+        dm.writePage(new BytePage(pid, 8));
+        dm.sync(tableid);
+        assertEquals(new BytePage(pid, 8), dm.readPage(pid, pm));
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void badPageSizeFailsImmediately() {
+        dm.writePage(new DiskManagerImplTest.BytePage(new SimplePageId(tableid, 0), new byte[PAGESIZE - 1]));
+    }
+}
@@ -0,0 +1,192 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BlockingPinTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 20;
+    private static final int POOLSIZE = 2;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private DiskManagerImpl dm;
+    private BufferManagerImpl bm;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("blockingpintest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(new BytePage(pid, i));
+        }
+        bm = new BufferManagerImpl(POOLSIZE, dm);
+        bm.setPinTimeout(5000);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void pin(int pageno) {
+        assertEquals(new BytePage(new SimplePageId(tableid, pageno), pageno),
+                bm.pinPage(new SimplePageId(tableid, pageno), pm));
+    }
+
+    private void unpin(int pageno) {
+        bm.unpinPage(new SimplePageId(tableid, pageno), false);
+    }
+
+    /**
+     * Starts a thread that pins a page and records the order in which pins succeed.
+     */
+    private Thread pinner(final int pageno, final List<Integer> order, final AtomicReference<Throwable> error) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pin(pageno);
+                    order.add(pageno);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private void awaitWaiting(Thread t) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (t.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue("timed out waiting for the pin to block", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void pinWaitsForUnpin() throws InterruptedException {
+        pin(0);
+        pin(1);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread t = pinner(2, order, error);
+        awaitWaiting(t);
+        assertTrue(order.isEmpty());
+        unpin(0);
+        t.join(5000);
+        assertNull(error.get());
+        assertEquals(Collections.singletonList(2), order);
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        assertTrue(bm.getStats().getPinWaitNanos() > 0);
+    }
+
+    @Test
+    public void pinTimesOut() {
+        bm.setPinTimeout(50);
+        assertEquals(50, bm.getPinTimeout());
+        pin(0);
+        pin(1);
+        long start = System.nanoTime();
+        try {
+            pin(2);
+            fail("pin should have timed out");
+        } catch (BufferManagerException e) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+        unpin(0);
+        pin(2);     // the pool still works after a timeout
+    }
+
+    @Test
+    public void zeroTimeoutFailsAtOnce() {
+        bm.setPinTimeout(0);
+        pin(0);
+        pin(1);
+        try {
+            pin(2);
+            fail("pin should have failed");
+        } catch (BufferManagerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void waitersServedInOrder() throws InterruptedException {
+        pin(0);
+        pin(1);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int pageno = 2; pageno < 6; pageno++) {
+            Thread t = pinner(pageno, order, error);
+            awaitWaiting(t);    // start waiting one after another
+            threads.add(t);
+        }
+
+        // each freed frame lets exactly one waiter through, the one that waited longest
+        unpin(0);
+        threads.get(0).join(5000);
+        Thread.sleep(50);
+        assertEquals(Collections.singletonList(2), order);
+        for (int i = 1; i < threads.size(); i++) {
+            assertEquals(Thread.State.TIMED_WAITING, threads.get(i).getState());
+        }
+
+        unpin(1);
+        threads.get(1).join(5000);
+        unpin(2);
+        threads.get(2).join(5000);
+        unpin(3);
+        threads.get(3).join(5000);
+        assertNull(error.get());
+        assertEquals(Arrays.asList(2, 3, 4, 5), order);
+    }
+
+    @Test
+    public void discardWakesWaiter() throws InterruptedException {
+        pin(0);
+        pin(1);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread t = pinner(2, order, error);
+        awaitWaiting(t);
+        bm.discardPage(new SimplePageId(tableid, 1));   // frees the frame although it is pinned
+        t.join(5000);
+        assertNull(error.get());
+        assertEquals(Collections.singletonList(2), order);
+    }
+}
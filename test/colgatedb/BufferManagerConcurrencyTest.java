@@ -0,0 +1,267 @@
+package colgatedb;
+
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BufferManagerConcurrencyTest {
+    private static final int PAGESIZE = 16;
+    protected static final int NUMPAGES = 40;
+    protected static final int THREADS = 8;
+    protected final int tableid = 0;
+    protected final CounterPageMaker pm = new CounterPageMaker();
+    protected DiskManagerImpl dm;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("bmconctest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            dm.allocatePage(new SimplePageId(tableid, i));
+        }
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        dm.close();
+    }
+
+    /**
+     * Subclasses override this to run the same tests against another replacement policy.
+     */
+    protected BufferManagerImpl newBufferManager(int numPages) {
+        return new BufferManagerImpl(numPages, dm);
+    }
+
+    private void runOnAllThreads(final Callable<Void> task) throws Exception {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<Void> future : futures) {
+            future.get();   // rethrows any assertion failure from the worker
+        }
+    }
+
+    /**
+     * Many threads pin random pages of a table much larger than the pool.  Every pin must
+     * return the requested page, and every page must be read from disk only when missed.
+     */
+    @Test
+    public void concurrentPinsReturnTheRightPage() throws Exception {
+        final BufferManagerImpl bm = newBufferManager(10);
+        bm.evictDirty(true);
+        runOnAllThreads(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Random random = new Random(Thread.currentThread().getId());
+                for (int i = 0; i < 2000; i++) {
+                    PageId pid = new SimplePageId(tableid, random.nextInt(NUMPAGES));
+                    Page page = bm.pinPage(pid, pm);
+                    assertEquals(pid, page.getId());
+                    bm.unpinPage(pid, false);
+                }
+                return null;
+            }
+        });
+        for (int i = 0; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            if (bm.inBufferPool(pid)) {
+                assertEquals(pid, bm.getPage(pid).getId());
+            }
+        }
+    }
+
+    /**
+     * Each thread owns a disjoint set of pages and increments a counter on its pages while the
+     * pool evicts dirty pages underneath it.  No update may be lost.
+     */
+    @Test
+    public void noLostUpdatesUnderEviction() throws Exception {
+        final BufferManagerImpl bm = newBufferManager(12);
+        bm.evictDirty(true);
+        final int rounds = 200;
+        final int[] nextThread = {0};
+        runOnAllThreads(new Callable<Void>() {
+            @Override
+            public Void call() {
+                int me;
+                synchronized (nextThread) {
+                    me = nextThread[0]++;
+                }
+                for (int round = 0; round < rounds; round++) {
+                    for (int pageno = me; pageno < NUMPAGES; pageno += THREADS) {
+                        PageId pid = new SimplePageId(tableid, pageno);
+                        CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+                        page.count++;
+                        bm.unpinPage(pid, true);
+                    }
+                }
+                return null;
+            }
+        });
+        bm.flushAllPages();
+        for (int i = 0; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            assertEquals(rounds, ((CounterPage) dm.readPage(pid, pm)).count);
+        }
+    }
+
+    /**
+     * As above, but the threads also flush their pages, so that pages are evicted by one thread
+     * while another is writing them.  A page must not be dropped before its flush is done.
+     */
+    @Test
+    public void noLostUpdatesWhileFlushing() throws Exception {
+        final BufferManagerImpl bm = newBufferManager(12);
+        bm.evictDirty(true);
+        final int rounds = 100;
+        final int[] nextThread = {0};
+        runOnAllThreads(new Callable<Void>() {
+            @Override
+            public Void call() {
+                int me;
+                synchronized (nextThread) {
+                    me = nextThread[0]++;
+                }
+                for (int round = 0; round < rounds; round++) {
+                    for (int pageno = me; pageno < NUMPAGES; pageno += THREADS) {
+                        PageId pid = new SimplePageId(tableid, pageno);
+                        CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+                        page.count++;
+                        bm.unpinPage(pid, true);
+                    }
+                    if (me == 0) {
+                        bm.flushAllPages();
+                    } else {
+                        bm.flushPage(new SimplePageId(tableid, me + THREADS * (round % (NUMPAGES / THREADS))));
+                    }
+                }
+                return null;
+            }
+        });
+        bm.flushAllPages();
+        for (int i = 0; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            assertEquals(rounds, ((CounterPage) dm.readPage(pid, pm)).count);
+        }
+    }
+
+    @Test
+    public void discardWhileOthersPin() throws Exception {
+        final BufferManagerImpl bm = newBufferManager(4);
+        bm.evictDirty(true);
+        bm.setPinTimeout(5000);     // more threads than frames: all four frames may be pinned at once
+        runOnAllThreads(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Random random = new Random(Thread.currentThread().getId());
+                for (int i = 0; i < 2000; i++) {
+                    PageId pid = new SimplePageId(tableid, random.nextInt(8));
+                    if (random.nextInt(10) == 0) {
+                        bm.discardPage(pid);
+                        continue;
+                    }
+                    Page page = bm.pinPage(pid, pm);
+                    assertEquals(pid, page.getId());
+                    try {
+                        bm.unpinPage(pid, false);
+                    } catch (BufferManagerException e) {
+                        // someone discarded the page while we had it pinned
+                    }
+                }
+                return null;
+            }
+        });
+        // every frame must have come back: with nothing pinned, the pool can hold 4 new pages
+        for (int i = 8; i < 12; i++) {
+            bm.pinPage(new SimplePageId(tableid, i), pm);
+        }
+    }
+
+    /**
+     * A page holding a single counter in its first four bytes.
+     */
+    static class CounterPage implements Page {
+        private final PageId pid;
+        volatile int count;
+
+        CounterPage(PageId pid, int count) {
+            this.pid = pid;
+            this.count = count;
+        }
+
+        @Override
+        public PageId getId() {
+            return pid;
+        }
+
+        @Override
+        public byte[] getPageData() {
+            byte[] data = new byte[PAGESIZE];
+            data[0] = (byte) (count >>> 24);
+            data[1] = (byte) (count >>> 16);
+            data[2] = (byte) (count >>> 8);
+            data[3] = (byte) count;
+            return data;
+        }
+
+        @Override
+        public Page getBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class CounterPageMaker implements PageMaker {
+        @Override
+        public Page makePage(PageId pid, byte[] bytes) {
+            int count = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+            return new CounterPage(pid, count);
+        }
+
+        @Override
+        public Page makePage(PageId pid) {
+            return new CounterPage(pid, 0);
+        }
+    }
+}
@@ -105,6 +105,11 @@ public class BufferManagerMoreTest {
             container.pageDatum = ((MockPage)page).datum;
         }
 
+        @Override
+        public void sync(int tableid) {
+            // writes to this disk manager are immediately "durable"
+        }
+
         public PageContainer getPageContainer(PageId pid) {
             assertTrue(0 <= pid.pageNumber() && pid.pageNumber() < pages.size());
             return pages.get(pid.pageNumber());
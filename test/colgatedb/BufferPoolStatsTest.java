@@ -0,0 +1,189 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BufferPoolStatsTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 8;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private final CountDownLatch readStarted = new CountDownLatch(1);
+    private final CountDownLatch allowRead = new CountDownLatch(1);
+    private volatile boolean slowReads = false;
+    private DiskManagerImpl dm;
+    private BufferManagerImpl bm;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("bpstatstest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE) {
+            @Override
+            public Page readPage(PageId pid, PageMaker pageMaker) {
+                if (slowReads) {
+                    readStarted.countDown();
+                    try {
+                        allowRead.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.readPage(pid, pageMaker);
+            }
+        };
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(new BytePage(pid, i));
+        }
+        bm = new BufferManagerImpl(4, dm);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void pinAndUnpin(int pageno, boolean dirty) {
+        PageId pid = new SimplePageId(tableid, pageno);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, dirty);
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        pinAndUnpin(0, false);
+        pinAndUnpin(1, false);
+        pinAndUnpin(0, false);
+        pinAndUnpin(0, false);
+        BufferPoolStats stats = bm.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(0.5, stats.getHitRatio(), 1e-9);
+        assertEquals(4, stats.getFrames());
+    }
+
+    @Test
+    public void evictionsAreCleanOrDirty() {
+        bm.evictDirty(true);
+        pinAndUnpin(0, true);
+        pinAndUnpin(1, false);
+        pinAndUnpin(2, false);
+        pinAndUnpin(3, false);
+        pinAndUnpin(4, false);      // evicts page 0, which is dirty
+        pinAndUnpin(5, false);      // evicts page 1
+        BufferPoolStats stats = bm.getStats();
+        assertEquals(1, stats.getDirtyEvictions());
+        assertEquals(1, stats.getCleanEvictions());
+        assertEquals(2, stats.getEvictions());
+        assertEquals(0, stats.getFlushes());
+    }
+
+    @Test
+    public void flushesAndDirtyPages() {
+        pinAndUnpin(0, true);
+        pinAndUnpin(1, true);
+        bm.pinPage(new SimplePageId(tableid, 2), pm);
+        BufferPoolStats stats = bm.getStats();
+        assertEquals(2, stats.getDirtyPages());
+        assertEquals(1, stats.getPinnedFrames());
+
+        bm.flushPage(new SimplePageId(tableid, 0));
+        bm.flushAllPages();
+        bm.flushAllPages();     // nothing left to write
+        stats = bm.getStats();
+        assertEquals(2, stats.getFlushes());
+        assertEquals(0, stats.getDirtyPages());
+    }
+
+    @Test
+    public void sinceGivesTheDifference() {
+        pinAndUnpin(0, false);
+        BufferPoolStats before = bm.getStats();
+        pinAndUnpin(0, false);
+        pinAndUnpin(1, false);
+        BufferPoolStats delta = bm.getStats().since(before);
+        assertEquals(1, delta.getHits());
+        assertEquals(1, delta.getMisses());
+
+        bm.resetStats();
+        assertEquals(0, bm.getStats().getHits());
+        assertEquals(0, bm.getStats().getMisses());
+    }
+
+    @Test
+    public void waitingForAReadIsCounted() throws Exception {
+        slowReads = true;
+        final PageId pid = new SimplePageId(tableid, 0);
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bm.pinPage(pid, pm);
+            }
+        });
+        loader.start();
+        readStarted.await();
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bm.pinPage(pid, pm);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        allowRead.countDown();
+        loader.join();
+        waiter.join();
+        BufferPoolStats stats = bm.getStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertTrue(stats.getPinWaitNanos() > 0);
+        assertEquals(1, stats.getPinnedFrames());
+    }
+
+    @Test
+    public void registeredAsMBean() throws Exception {
+        bm.registerMBean("statstest");
+        pinAndUnpin(0, false);
+        pinAndUnpin(0, false);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("colgatedb:type=BufferPool,name=statstest");
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(4, server.getAttribute(name, "Frames"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Hits"));
+    }
+}
@@ -0,0 +1,176 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.dbfile.HeapFile;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class BufferPoolsTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 10;
+    private final int facts = 0;
+    private final int dimension = 1;
+    private final BytePageMaker pm = new BytePageMaker();
+    private DiskManagerImpl dm;
+    private BufferPools pools;
+
+    @Before
+    public void setUp() throws IOException {
+        dm = new DiskManagerImpl(PAGESIZE);
+        for (int tableid : new int[]{facts, dimension}) {
+            File dataFile = File.createTempFile("poolstest", ".dat");
+            dataFile.deleteOnExit();
+            dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+            for (int i = 0; i < NUMPAGES; i++) {
+                SimplePageId pid = new SimplePageId(tableid, i);
+                dm.allocatePage(pid);
+                dm.writePage(new BytePage(pid, i));
+            }
+        }
+        pools = new BufferPools(new BufferManagerImpl(4, dm), dm);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void pinAndUnpin(int tableid, int pageno, boolean dirty) {
+        SimplePageId pid = new SimplePageId(tableid, pageno);
+        assertEquals(new BytePage(pid, pageno), pools.pinPage(pid, pm));
+        pools.unpinPage(pid, dirty);
+    }
+
+    @Test
+    public void scansDoNotEvictTheKeepPool() {
+        pools.addPool("keep", 2, new LruPolicy());
+        pools.assign(dimension, "keep");
+        pinAndUnpin(dimension, 0, false);
+        pinAndUnpin(dimension, 1, false);
+        for (int i = 0; i < NUMPAGES; i++) {
+            pinAndUnpin(facts, i, false);
+        }
+        assertTrue(pools.inBufferPool(new SimplePageId(dimension, 0)));
+        assertTrue(pools.inBufferPool(new SimplePageId(dimension, 1)));
+        assertFalse(pools.inBufferPool(new SimplePageId(facts, 0)));
+    }
+
+    @Test
+    public void eachPoolCountsItsOwnPages() {
+        BufferManagerImpl keep = pools.addPool("keep", 2, new ClockPolicy());
+        pools.assign(dimension, "keep");
+        pinAndUnpin(dimension, 0, false);
+        pinAndUnpin(dimension, 0, false);
+        pinAndUnpin(facts, 0, false);
+        assertEquals(1, keep.getStats().getHits());
+        assertEquals(1, keep.getStats().getMisses());
+        assertEquals(0, pools.getDefaultPool().getStats().getHits());
+        assertEquals(1, pools.getDefaultPool().getStats().getMisses());
+        assertSame(keep, pools.poolFor(dimension));
+        assertSame(pools.getDefaultPool(), pools.poolFor(facts));
+        assertTrue(pools.getPoolNames().contains(BufferPools.DEFAULT_POOL));
+        assertTrue(pools.getPoolNames().contains("keep"));
+    }
+
+    @Test
+    public void flushAllPagesFlushesEveryPool() {
+        pools.addPool("keep", 2, new LruPolicy());
+        pools.assign(dimension, "keep");
+        pinAndUnpin(dimension, 0, true);
+        pinAndUnpin(facts, 0, true);
+        long written = dm.getTotalStats().getPagesWritten();
+        pools.flushAllPages();
+        assertEquals(written + 2, dm.getTotalStats().getPagesWritten());
+    }
+
+    @Test
+    public void evictDirtyAppliesToNewPools() {
+        pools.evictDirty(true);
+        pools.addPool("keep", 1, new LruPolicy());
+        pools.assign(dimension, "keep");
+        pinAndUnpin(dimension, 0, true);
+        pinAndUnpin(dimension, 1, false);  // evicts the dirty page
+        assertFalse(pools.inBufferPool(new SimplePageId(dimension, 0)));
+    }
+
+    @Test(expected = BufferManagerException.class)
+    public void poolNamesAreUnique() {
+        pools.addPool("keep", 2, new LruPolicy());
+        pools.addPool("keep", 2, new LruPolicy());
+    }
+
+    @Test(expected = BufferManagerException.class)
+    public void unknownPool() {
+        pools.assign(dimension, "recycle");
+    }
+
+    @Test(expected = BufferManagerException.class)
+    public void tableInUseCannotMove() {
+        pools.addPool("keep", 2, new LruPolicy());
+        pinAndUnpin(dimension, 0, false);
+        pools.assign(dimension, "keep");
+    }
+
+    @Test
+    public void catalogAssignsTables() throws IOException {
+        Database.reset();
+        File dataFile = File.createTempFile("poolstest", ".dat");
+        dataFile.deleteOnExit();
+        HeapFile hf = Catalog.addHeapFile("dimension", TestUtility.getTupleDesc(2), dataFile);
+        Catalog catalog = Database.getCatalog();
+        assertEquals(BufferPools.DEFAULT_POOL, catalog.getBufferPool(hf.getId()));
+
+        BufferPools databasePools = Database.getBufferPools();
+        databasePools.addPool("keep", 4, new LruPolicy());
+        catalog.setBufferPool(hf.getId(), "keep");
+        assertEquals("keep", catalog.getBufferPool(hf.getId()));
+        assertSame(databasePools.getPool("keep"), databasePools.poolFor(hf.getId()));
+        Database.reset();
+    }
+
+    @Test
+    public void renewingTheDatabaseUnregistersItsBeans() throws Exception {
+        Database.reset();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName defaultPool = new ObjectName("colgatedb:type=BufferPool,name=default");
+        ObjectName keepPool = new ObjectName("colgatedb:type=BufferPool,name=keep");
+        ObjectName tableStats = new ObjectName("colgatedb:type=DiskStats,table=4711");
+        for (int size : new int[]{7, 9}) {     // renew twice
+            Database.getBufferPools().addPool("keep", 2, new LruPolicy());
+            Database.getDiskManager().getStats(4711);
+            assertTrue(server.isRegistered(keepPool));
+            assertTrue(server.isRegistered(tableStats));
+
+            Database.setBufferPoolSize(size);
+            assertFalse("the replaced database's pool is still registered", server.isRegistered(keepPool));
+            assertFalse("the replaced database's table stats are still registered", server.isRegistered(tableStats));
+            assertEquals(size, server.getAttribute(defaultPool, "Frames"));
+        }
+        Database.reset();
+    }
+}
@@ -0,0 +1,70 @@
+package colgatedb;
+
+import colgatedb.page.SimplePageId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ClockPolicyTest extends BufferManagerConcurrencyTest {
+
+    @Override
+    protected BufferManagerImpl newBufferManager(int numPages) {
+        return new BufferManagerImpl(numPages, dm, new ClockPolicy());
+    }
+
+    private void pinAndUnpin(BufferManagerImpl bm, int pageno) {
+        SimplePageId pid = new SimplePageId(tableid, pageno);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, false);
+    }
+
+    @Test
+    public void referencedPageGetsSecondChance() {
+        BufferManagerImpl bm = newBufferManager(3);
+        pinAndUnpin(bm, 0);
+        pinAndUnpin(bm, 1);
+        pinAndUnpin(bm, 2);
+        // first sweep clears every reference bit and then takes page 0
+        pinAndUnpin(bm, 3);
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        // page 1 is referenced again, so the hand skips it and takes page 2
+        pinAndUnpin(bm, 1);
+        pinAndUnpin(bm, 4);
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 1)));
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 2)));
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 3)));
+    }
+
+    @Test
+    public void pinnedPagesAreNeverEvicted() {
+        BufferManagerImpl bm = newBufferManager(2);
+        SimplePageId pinned = new SimplePageId(tableid, 0);
+        bm.pinPage(pinned, pm);
+        for (int i = 1; i < 10; i++) {
+            pinAndUnpin(bm, i);
+        }
+        assertTrue(bm.inBufferPool(pinned));
+    }
+
+    @Test(expected = BufferManagerException.class)
+    public void allPinned() {
+        BufferManagerImpl bm = newBufferManager(2);
+        bm.pinPage(new SimplePageId(tableid, 0), pm);
+        bm.pinPage(new SimplePageId(tableid, 1), pm);
+        bm.pinPage(new SimplePageId(tableid, 2), pm);
+    }
+}
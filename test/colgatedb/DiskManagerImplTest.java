@@ -0,0 +1,535 @@
+package colgatedb;
+
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class DiskManagerImplTest {
+    private static final int PAGESIZE = 64;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private DiskManagerImpl dm;
+    private File dataFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dataFile = File.createTempFile("dmtest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void allocateAndWrite(int numPages) {
+        for (int i = 0; i < numPages; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(new BytePage(pid, i));
+        }
+    }
+
+    @Test
+    public void readWhatWasWritten() {
+        allocateAndWrite(5);
+        assertEquals(5, dm.getNumPages(tableid));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new BytePage(new SimplePageId(tableid, i), i),
+                    dm.readPage(new SimplePageId(tableid, i), pm));
+        }
+    }
+
+    @Test
+    public void survivesReopen() {
+        allocateAndWrite(3);
+        dm.close();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(3, dm.getNumPages(tableid));
+        assertEquals(new BytePage(new SimplePageId(tableid, 2), 2),
+                dm.readPage(new SimplePageId(tableid, 2), pm));
+    }
+
+    @Test
+    public void memoryMappedReads() {
+        allocateAndWrite(3);
+        dm.setMemoryMapped(tableid, true);
+        assertTrue(dm.isMemoryMapped(tableid));
+        assertEquals(new BytePage(new SimplePageId(tableid, 1), 1),
+                dm.readPage(new SimplePageId(tableid, 1), pm));
+
+        // writes and growth must be visible through the mapping
+        SimplePageId pid1 = new SimplePageId(tableid, 1);
+        dm.writePage(new BytePage(pid1, 42));
+        assertEquals(new BytePage(pid1, 42), dm.readPage(pid1, pm));
+        SimplePageId pid3 = new SimplePageId(tableid, 3);
+        dm.allocatePage(pid3);
+        dm.writePage(new BytePage(pid3, 7));
+        assertEquals(new BytePage(pid3, 7), dm.readPage(pid3, pm));
+
+        dm.setMemoryMapped(tableid, false);
+        assertEquals(new BytePage(pid3, 7), dm.readPage(pid3, pm));
+    }
+
+    @Test
+    public void shrinkingMappedFileDropsTheMapping() throws IOException {
+        File file = File.createTempFile("dmtest", ".dat");
+        file.deleteOnExit();
+        PlainTableFile table = new PlainTableFile(PAGESIZE, new RandomAccessFile(file, "rw"));
+        byte[] page = new byte[PAGESIZE];
+        for (int i = 0; i < 3; i++) {
+            table.allocate(i, 8);
+            Arrays.fill(page, (byte) i);
+            table.writePage(i, page);
+        }
+        table.setMapped(true);
+        table.readPage(2, page);    // maps the whole extent, past what the trim keeps
+
+        // no mapping may outlive the pages it covers
+        table.setCapacity(3);
+        assertFalse(table.isMapped());
+        assertEquals(3 * PAGESIZE, file.length());
+        table.readPage(2, page);
+        assertEquals(2, page[0]);
+        table.close();
+    }
+
+    @Test
+    public void vectoredReadsAndWrites() {
+        allocateAndWrite(6);
+        // out of order, with a gap, so the pages form more than one run
+        List<Page> pages = new ArrayList<Page>();
+        for (int pageno : new int[]{4, 1, 0, 5, 2}) {
+            pages.add(new BytePage(new SimplePageId(tableid, pageno), 10 + pageno));
+        }
+        dm.writePages(pages);
+
+        List<PageId> pids = new ArrayList<PageId>();
+        for (int pageno : new int[]{5, 3, 0, 1, 2, 4}) {
+            pids.add(new SimplePageId(tableid, pageno));
+        }
+        List<Page> read = dm.readPages(pids, pm);
+        assertEquals(pids.size(), read.size());
+        for (int i = 0; i < pids.size(); i++) {
+            int pageno = pids.get(i).pageNumber();
+            int expected = pageno == 3 ? 3 : 10 + pageno;  // page 3 was not rewritten
+            assertEquals(new BytePage(pids.get(i), expected), read.get(i));
+        }
+    }
+
+    @Test
+    public void vectoredWriteOfSamePageKeepsLast() {
+        allocateAndWrite(2);
+        SimplePageId pid1 = new SimplePageId(tableid, 1);
+        dm.writePages(Arrays.<Page>asList(new BytePage(pid1, 5), new BytePage(pid1, 6)));
+        assertEquals(new BytePage(pid1, 6), dm.readPage(pid1, pm));
+    }
+
+    @Test
+    public void extentAllocation() {
+        dm.setExtentSize(8);
+        allocateAndWrite(3);
+        assertEquals(3, dm.getNumPages(tableid));
+        assertEquals(8 * PAGESIZE, dataFile.length());   // one whole extent
+        try {
+            dm.readPage(new SimplePageId(tableid, 3), pm);
+            fail("Page 3 has not been allocated yet");
+        } catch (DiskManagerException e) {
+            // expected
+        }
+        SimplePageId pid3 = new SimplePageId(tableid, 3);
+        dm.allocatePage(pid3);
+        assertEquals(new BytePage(pid3, 0), dm.readPage(pid3, pm));  // fresh pages are zeroed
+        allocateFrom(4, 10);
+        assertEquals(10, dm.getNumPages(tableid));
+        assertEquals(16 * PAGESIZE, dataFile.length());
+
+        // unused extent pages are trimmed on close
+        dm.close();
+        assertEquals(10 * PAGESIZE, dataFile.length());
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(10, dm.getNumPages(tableid));
+    }
+
+    private void allocateFrom(int first, int end) {
+        for (int i = first; i < end; i++) {
+            dm.allocatePage(new SimplePageId(tableid, i));
+        }
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void readBeyondEndOfFile() {
+        allocateAndWrite(1);
+        dm.readPage(new SimplePageId(tableid, 1), pm);
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void removedTableIsForgotten() {
+        allocateAndWrite(1);
+        dm.removeFileEntry(tableid);
+        dm.readPage(new SimplePageId(tableid, 0), pm);
+    }
+
+    @Test
+    public void resettingTheDatabaseClosesItsDiskManager() {
+        DiskManagerImpl old = Database.getDiskManager();
+        old.addFileEntry(tableid, dataFile.getAbsolutePath());
+        Database.reset();
+        assertFalse(old.hasFileEntry(tableid));
+        assertNotSame(old, Database.getDiskManager());
+    }
+
+    @Test
+    public void directIOFallsBackWhenPageSizeIsUnaligned() {
+        dm.close();
+        dm = new DiskManagerImpl(PAGESIZE);   // far smaller than any file system block
+        dm.setDirectIO(true);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertFalse(dm.isDirectIO(tableid));
+        allocateAndWrite(3);
+        assertEquals(new BytePage(new SimplePageId(tableid, 2), 2), dm.readPage(new SimplePageId(tableid, 2), pm));
+    }
+
+    @Test
+    public void directIOReadsAndWrites() {
+        // whether or not this file system supports direct I/O, the table must behave the same
+        int pageSize = 4096;
+        dm.close();
+        dm = new DiskManagerImpl(pageSize);
+        dm.setDirectIO(true);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        List<Page> pages = new ArrayList<Page>();
+        for (int i = 0; i < 5; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            byte[] data = new byte[pageSize];
+            Arrays.fill(data, (byte) (i + 1));
+            pages.add(new BytePage(pid, data));
+        }
+        dm.writePage(pages.get(0));
+        dm.writePages(pages.subList(1, 5));
+        dm.close();
+
+        dm = new DiskManagerImpl(pageSize);
+        dm.setDirectIO(true);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        assertEquals(5, dm.getNumPages(tableid));
+        assertEquals(pages.get(3), dm.readPage(new SimplePageId(tableid, 3), pm));
+        List<PageId> pids = new ArrayList<PageId>();
+        for (Page page : pages) {
+            pids.add(page.getId());
+        }
+        assertEquals(pages, dm.readPages(pids, pm));
+    }
+
+    @Test
+    public void ioIsCounted() throws Exception {
+        allocateAndWrite(4);
+        List<PageId> pids = new ArrayList<PageId>();
+        for (int i = 0; i < 4; i++) {
+            pids.add(new SimplePageId(tableid, i));
+        }
+        dm.readPages(pids, pm);     // one vectored read
+        dm.readPage(pids.get(0), pm);
+
+        DiskStats stats = dm.getStats(tableid);
+        assertEquals(4, stats.getPagesAllocated());
+        assertEquals(4, stats.getPagesWritten());
+        assertEquals(4, stats.getWriteCalls());
+        assertEquals(4 * PAGESIZE, stats.getBytesWritten());
+        assertEquals(5, stats.getPagesRead());
+        assertEquals(2, stats.getReadCalls());
+        assertEquals(5 * PAGESIZE, stats.getBytesRead());
+        assertTrue(stats.getReadLatency().getMax() > 0);
+        assertEquals(5, dm.getTotalStats().getPagesRead());
+        assertEquals(0, dm.getStats(tableid + 1).getPagesRead());
+
+        dm.registerMBeans();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(5L, server.getAttribute(new ObjectName("colgatedb:type=DiskStats,table=" + tableid), "PagesRead"));
+        stats.reset();
+        assertEquals(0, stats.getPagesRead());
+    }
+
+    private List<String> stripeFiles(int k) throws IOException {
+        List<String> stripes = new ArrayList<String>();
+        for (int i = 0; i < k; i++) {
+            File stripe = File.createTempFile("dmtest-stripe" + i, ".dat");
+            stripe.deleteOnExit();
+            stripes.add(stripe.getAbsolutePath());
+        }
+        return stripes;
+    }
+
+    @Test
+    public void stripedReadsAndWrites() throws IOException {
+        List<String> stripes = stripeFiles(3);
+        dm.removeFileEntry(tableid);
+        dm.setExtentSize(4);
+        dm.addStripedFileEntry(tableid, stripes);
+        allocateAndWrite(10);
+        List<PageId> pids = new ArrayList<PageId>();
+        for (int i = 0; i < 10; i++) {
+            pids.add(new SimplePageId(tableid, i));
+        }
+        List<Page> read = dm.readPages(pids, pm);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new BytePage(pids.get(i), i), read.get(i));
+        }
+
+        // pages 0, 3, 6, 9 go to the first stripe, the rest alternate over the others
+        dm.close();
+        assertEquals(4 * PAGESIZE, new File(stripes.get(0)).length());
+        assertEquals(3 * PAGESIZE, new File(stripes.get(1)).length());
+        assertEquals(3 * PAGESIZE, new File(stripes.get(2)).length());
+
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addStripedFileEntry(tableid, stripes);
+        assertEquals(10, dm.getNumPages(tableid));
+        assertEquals(new BytePage(pids.get(7), 7), dm.readPage(pids.get(7), pm));
+        SimplePageId pid10 = new SimplePageId(tableid, 10);
+        dm.allocatePage(pid10);
+        dm.writePage(new BytePage(pid10, 10));
+        assertEquals(new BytePage(pid10, 10), dm.readPage(pid10, pm));
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void stripesInWrongOrderAreRejected() throws IOException {
+        List<String> stripes = stripeFiles(3);
+        dm.removeFileEntry(tableid);
+        dm.addStripedFileEntry(tableid, stripes);
+        allocateAndWrite(4);    // stripe 0 gets two pages, the others one each
+        dm.removeFileEntry(tableid);
+        Collections.reverse(stripes);
+        dm.addStripedFileEntry(tableid, stripes);
+    }
+
+    /**
+     * A page in the shape of a heap page: a few live bytes up front, the rest zero.
+     */
+    private static byte[] sparsePage(int value) {
+        byte[] data = new byte[PAGESIZE];
+        for (int i = 0; i < 6; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+
+    private void reopenCompressed() {
+        dm.close();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addCompressedFileEntry(tableid, dataFile.getAbsolutePath());
+    }
+
+    @Test
+    public void compressedReadWhatWasWritten() {
+        dm.removeFileEntry(tableid);
+        dm.addCompressedFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < 20; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            assertEquals(new BytePage(pid, 0), dm.readPage(pid, pm));   // never written, reads as empty
+            dm.writePage(new BytePage(pid, sparsePage(i)));
+        }
+        // grow a page past its slot, then shrink it again
+        SimplePageId pid5 = new SimplePageId(tableid, 5);
+        dm.writePage(new BytePage(pid5, 77));
+        assertEquals(new BytePage(pid5, 77), dm.readPage(pid5, pm));
+        dm.writePage(new BytePage(pid5, sparsePage(5)));
+
+        reopenCompressed();
+        assertEquals(20, dm.getNumPages(tableid));
+        List<PageId> pids = new ArrayList<PageId>();
+        for (int i = 0; i < 20; i++) {
+            pids.add(new SimplePageId(tableid, i));
+        }
+        List<Page> read = dm.readPages(pids, pm);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new BytePage(pids.get(i), sparsePage(i)), read.get(i));
+        }
+        // sparse pages take far less room than they would uncompressed
+        assertTrue(dataFile.length() < 20 * PAGESIZE / 2);
+    }
+
+    @Test
+    public void compressedExtentAllocation() {
+        reopenCompressed();
+        dm.setExtentSize(8);
+        for (int i = 0; i < 3; i++) {
+            dm.allocatePage(new SimplePageId(tableid, i));
+        }
+        dm.writePage(new BytePage(new SimplePageId(tableid, 2), sparsePage(2)));
+        reopenCompressed();   // unused extent pages are trimmed on close
+        assertEquals(3, dm.getNumPages(tableid));
+        assertEquals(new BytePage(new SimplePageId(tableid, 1), 0), dm.readPage(new SimplePageId(tableid, 1), pm));
+        assertEquals(new BytePage(new SimplePageId(tableid, 2), sparsePage(2)),
+                dm.readPage(new SimplePageId(tableid, 2), pm));
+    }
+
+    @Test
+    public void compressedReadsNeverSeeAHalfRewrittenPage() throws InterruptedException {
+        reopenCompressed();
+        final SimplePageId pid = new SimplePageId(tableid, 0);
+        dm.allocatePage(pid);
+        dm.writePage(new BytePage(pid, sparsePage(0)));
+        final BytePage sparse = new BytePage(pid, sparsePage(0));
+        final BytePage full = new BytePage(pid, 77);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        Page read = dm.readPage(pid, pm);
+                        assertTrue(read.equals(sparse) || read.equals(full));
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        });
+        reader.start();
+        // the two images differ in length, so every rewrite changes the page's entry
+        for (int i = 0; i < 2000; i++) {
+            dm.writePage(i % 2 == 0 ? full : sparse);
+        }
+        reader.join();
+        assertEquals(Collections.<Throwable>emptyList(), failures);
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void compressedTableCannotBeMapped() {
+        reopenCompressed();
+        dm.setMemoryMapped(tableid, true);
+    }
+
+    @Test
+    public void compressorRoundTrip() {
+        Random random = new Random(0);
+        for (int trial = 0; trial < 200; trial++) {
+            byte[] page = new byte[random.nextInt(1000)];
+            // mix of zero runs and random bytes of varying lengths
+            for (int i = 0; i < page.length; i += random.nextInt(300) + 1) {
+                int end = Math.min(page.length, i + random.nextInt(200));
+                for (int j = i; j < end; j++) {
+                    page[j] = (byte) random.nextInt(256);
+                }
+            }
+            byte[] compressed = PageCompressor.compress(page);
+            assertTrue(compressed.length <= PageCompressor.maxCompressedLength(page.length));
+            byte[] out = new byte[page.length];
+            PageCompressor.decompress(compressed, compressed.length, out);
+            assertArrayEquals(page, out);
+        }
+        assertEquals(32, PageCompressor.compress(new byte[4096]).length);
+    }
+
+    @Test(expected = DiskManagerException.class)
+    public void corruptCompressedPageIsRejected() {
+        byte[] compressed = PageCompressor.compress(sparsePage(1));
+        PageCompressor.decompress(compressed, compressed.length - 1, new byte[PAGESIZE]);
+    }
+
+    /**
+     * Page whose bytes are all equal to a single value.
+     */
+    static class BytePage implements Page {
+        private final PageId pid;
+        private final byte[] data;
+
+        BytePage(PageId pid, int value) {
+            this.pid = pid;
+            this.data = new byte[PAGESIZE];
+            Arrays.fill(data, (byte) value);
+        }
+
+        BytePage(PageId pid, byte[] data) {
+            this.pid = pid;
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof BytePage) &&
+                    ((BytePage) other).pid.equals(pid) &&
+                    Arrays.equals(((BytePage) other).data, data);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pid.hashCode() + Arrays.hashCode(data);
+        }
+
+        @Override
+        public PageId getId() {
+            return pid;
+        }
+
+        @Override
+        public byte[] getPageData() {
+            return data.clone();
+        }
+
+        @Override
+        public Page getBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+
+        public String toString() {
+            return "BytePage(id=" + pid + ", first=" + data[0] + ")";
+        }
+    }
+
+    static class BytePageMaker implements PageMaker {
+        @Override
+        public Page makePage(PageId pid, byte[] bytes) {
+            return new BytePage(pid, bytes);
+        }
+
+        @Override
+        public Page makePage(PageId pid) {
+            return new BytePage(pid, 0);
+        }
+    }
+}
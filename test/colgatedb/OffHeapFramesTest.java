@@ -0,0 +1,108 @@
+package colgatedb;
+
+import colgatedb.page.Page;
+import colgatedb.page.SimplePageId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class OffHeapFramesTest extends BufferManagerConcurrencyTest {
+
+    @Override
+    protected BufferManagerImpl newBufferManager(int numPages) {
+        BufferManagerImpl bm = new BufferManagerImpl(numPages, dm);
+        bm.setOffHeap(true);
+        return bm;
+    }
+
+    @Test
+    public void unpinnedCleanPageLeavesTheHeap() {
+        BufferManagerImpl bm = newBufferManager(4);
+        SimplePageId pid = new SimplePageId(tableid, 0);
+        CounterPage first = (CounterPage) bm.pinPage(pid, pm);
+        bm.unpinPage(pid, false);
+        CounterPage second = (CounterPage) bm.pinPage(pid, pm);
+        assertNotSame(first, second);
+        assertEquals(first.count, second.count);
+        assertEquals(1, bm.getStats().getMisses());
+        assertEquals(1, bm.getStats().getHits());
+    }
+
+    @Test
+    public void pinnedPageStaysOnTheHeap() {
+        BufferManagerImpl bm = newBufferManager(4);
+        SimplePageId pid = new SimplePageId(tableid, 0);
+        Page first = bm.pinPage(pid, pm);
+        assertSame(first, bm.pinPage(pid, pm));
+        bm.unpinPage(pid, false);
+        assertSame(first, bm.pinPage(pid, pm));
+        assertSame(first, bm.getPage(pid));
+    }
+
+    @Test
+    public void dirtyPageStaysOnTheHeap() {
+        BufferManagerImpl bm = newBufferManager(4);
+        SimplePageId pid = new SimplePageId(tableid, 0);
+        CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+        page.count = 42;
+        bm.unpinPage(pid, true);
+        assertSame(page, bm.pinPage(pid, pm));
+        bm.unpinPage(pid, false);
+        assertSame(page, bm.getPage(pid));
+    }
+
+    @Test
+    public void getPageRebuildsThePage() {
+        BufferManagerImpl bm = newBufferManager(4);
+        SimplePageId pid = new SimplePageId(tableid, 1);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, false);
+        Page page = bm.getPage(pid);
+        assertEquals(pid, page.getId());
+        assertSame(page, bm.pinPage(pid, pm));  // the rebuilt page is the resident one
+    }
+
+    @Test
+    public void changesSurviveEvictionAndReload() {
+        BufferManagerImpl bm = newBufferManager(2);
+        bm.evictDirty(true);
+        for (int i = 0; i < 4; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+            page.count = 100 + i;
+            bm.unpinPage(pid, true);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                SimplePageId pid = new SimplePageId(tableid, i);
+                CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+                assertEquals(100 + i, page.count);
+                bm.unpinPage(pid, false);
+            }
+        }
+    }
+
+    @Test
+    public void discardOffHeapPage() {
+        BufferManagerImpl bm = newBufferManager(2);
+        SimplePageId pid = new SimplePageId(tableid, 0);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, false);
+        bm.discardPage(pid);
+        assertFalse(bm.inBufferPool(pid));
+    }
+}
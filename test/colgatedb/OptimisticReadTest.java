@@ -0,0 +1,245 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.PageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class OptimisticReadTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 4;
+    private final int tableid = 0;
+    private final SimplePageId pid0 = new SimplePageId(tableid, 0);
+    private final SimplePageId pid1 = new SimplePageId(tableid, 1);
+    private final IntPageMaker pm = new IntPageMaker();
+    private DiskManagerImpl dm;
+    private BufferManagerImpl bm;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("optimisticreadtest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            dm.allocatePage(new SimplePageId(tableid, i));
+        }
+        bm = new BufferManagerImpl(1, dm);
+        bm.evictDirty(true);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private int readValue(PageId pid) {
+        return bm.readPage(pid, pm, page -> ((IntPage) page).value());
+    }
+
+    @Test
+    public void residentPageReadWithoutPin() {
+        IntPage page = (IntPage) bm.pinPage(pid0, pm);
+        page.fill(7);
+        bm.unpinPage(pid0, true);
+        BufferPoolStats before = bm.getStats();
+
+        assertEquals(7, readValue(pid0));
+        BufferPoolStats delta = bm.getStats().since(before);
+        assertEquals(1, delta.getHits());
+        assertEquals(1, delta.getUnpinnedReads());
+        assertEquals(0, delta.getMisses());
+
+        // the read left no pin behind, so the only frame can be reused
+        bm.pinPage(pid1, pm);
+        assertFalse(bm.inBufferPool(pid0));
+    }
+
+    @Test
+    public void missingPageReadThroughPin() {
+        assertEquals(0, readValue(pid0));
+        assertEquals(1, bm.getStats().getMisses());
+        assertEquals(0, bm.getStats().getUnpinnedReads());
+        assertTrue(bm.inBufferPool(pid0));
+        bm.pinPage(pid1, pm);   // and unpinned again
+        assertFalse(bm.inBufferPool(pid0));
+    }
+
+    @Test
+    public void pinnedPageReadThroughPin() {
+        bm.pinPage(pid0, pm);
+        assertEquals(0, readValue(pid0));
+        bm.unpinPage(pid0, false);
+        try {
+            bm.unpinPage(pid0, false);
+            fail("the read should have left the pin count as it was");
+        } catch (BufferManagerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void changeDuringReadIsDetected() {
+        bm.pinPage(pid0, pm);
+        bm.unpinPage(pid0, false);
+        final AtomicInteger runs = new AtomicInteger();
+        int value = bm.readPage(pid0, pm, page -> {
+            if (runs.incrementAndGet() == 1) {
+                // another caller changes the page while it is being read
+                IntPage pinned = (IntPage) bm.pinPage(pid0, pm);
+                pinned.fill(3);
+                bm.unpinPage(pid0, true);
+            }
+            return ((IntPage) page).value();
+        });
+        assertEquals(2, runs.get());
+        assertEquals(3, value);
+    }
+
+    @Test
+    public void failureOnChangedPageIsIgnored() {
+        bm.pinPage(pid0, pm);
+        bm.unpinPage(pid0, false);
+        final AtomicInteger runs = new AtomicInteger();
+        int value = bm.readPage(pid0, pm, page -> {
+            if (runs.incrementAndGet() == 1) {
+                bm.discardPage(pid0);
+                throw new IllegalStateException("read a page that was changing");
+            }
+            return ((IntPage) page).value();
+        });
+        assertEquals(2, runs.get());
+        assertEquals(0, value);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failureOnUnchangedPageIsThrown() {
+        bm.pinPage(pid0, pm);
+        bm.unpinPage(pid0, false);
+        bm.readPage(pid0, pm, page -> {
+            throw new IllegalStateException();
+        });
+    }
+
+    @Test
+    public void readsNeverSeePartialChanges() throws InterruptedException {
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger torn = new AtomicInteger();
+        final AtomicInteger unpinned = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 5000; i++) {
+                IntPage page = (IntPage) bm.pinPage(pid0, pm);
+                page.fill(i);
+                bm.unpinPage(pid0, true);
+                Thread.yield();     // let the reader in between changes, too
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            // only reads without a pin are checked: a pinned reader needs a lock to keep the writer out
+            long before = bm.getStats().getUnpinnedReads();
+            boolean uniform = bm.readPage(pid0, pm, page -> ((IntPage) page).isUniform());
+            if (bm.getStats().getUnpinnedReads() > before) {
+                unpinned.incrementAndGet();
+                if (!uniform) {
+                    torn.incrementAndGet();
+                }
+            }
+            Thread.yield();
+        }
+        writer.join();
+        assertEquals(0, torn.get());
+        assertTrue(unpinned.get() > 0);
+    }
+
+    /**
+     * A page of ints that is changed in place, one int at a time.
+     */
+    private static class IntPage implements Page {
+        private final PageId pid;
+        private final int[] values = new int[PAGESIZE / 4];
+
+        IntPage(PageId pid) {
+            this.pid = pid;
+        }
+
+        void fill(int value) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = value;
+                if (i == values.length / 2) {
+                    Thread.yield();     // give readers a chance to see half a change
+                }
+            }
+        }
+
+        int value() {
+            return values[0];
+        }
+
+        boolean isUniform() {
+            for (int v : values) {
+                if (v != values[0]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public PageId getId() {
+            return pid;
+        }
+
+        @Override
+        public byte[] getPageData() {
+            return new byte[PAGESIZE];
+        }
+
+        @Override
+        public Page getBeforeImage() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setBeforeImage() {
+        }
+    }
+
+    private static class IntPageMaker implements PageMaker {
+        @Override
+        public Page makePage(PageId pid, byte[] bytes) {
+            return new IntPage(pid);
+        }
+
+        @Override
+        public Page makePage(PageId pid) {
+            return new IntPage(pid);
+        }
+    }
+}
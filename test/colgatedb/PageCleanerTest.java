@@ -0,0 +1,128 @@
+package colgatedb;
+
+import colgatedb.page.PageId;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class PageCleanerTest extends BufferManagerConcurrencyTest {
+    private static final int TARGET = 3;
+    private final List<BufferManagerImpl> pools = new ArrayList<BufferManagerImpl>();
+
+    /**
+     * Pools in this class run a cleaner, including the pools of the inherited tests.
+     */
+    @Override
+    protected BufferManagerImpl newBufferManager(int numPages) {
+        BufferManagerImpl bm = super.newBufferManager(numPages);
+        // a pool with fewer frames than threads gets none: the extra misses caused by the cleaner
+        // make it likely that every frame is pinned at once, which is a legitimate failure
+        if (numPages >= THREADS) {
+            bm.startCleaner(TARGET);
+            pools.add(bm);
+        }
+        return bm;
+    }
+
+    @After
+    public void stopCleaners() {
+        for (BufferManagerImpl bm : pools) {
+            bm.stopCleaner();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out waiting for the cleaner", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void increment(BufferManagerImpl bm, int pageno) {
+        PageId pid = new SimplePageId(tableid, pageno);
+        CounterPage page = (CounterPage) bm.pinPage(pid, pm);
+        page.count++;
+        bm.unpinPage(pid, true);
+    }
+
+    private int countOnDisk(int pageno) {
+        return ((CounterPage) dm.readPage(new SimplePageId(tableid, pageno), pm)).count;
+    }
+
+    private int pagesInPool(BufferManagerImpl bm) {
+        int count = 0;
+        for (int i = 0; i < NUMPAGES; i++) {
+            if (bm.inBufferPool(new SimplePageId(tableid, i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void cleanerKeepsFramesFree() throws InterruptedException {
+        final BufferManagerImpl bm = newBufferManager(8);
+        bm.evictDirty(true);
+        for (int i = 0; i < 20; i++) {
+            increment(bm, i);
+        }
+        await(() -> pagesInPool(bm) <= 8 - TARGET);
+        for (int i = 0; i < 20; i++) {
+            if (!bm.inBufferPool(new SimplePageId(tableid, i))) {
+                assertEquals(1, countOnDisk(i));
+            }
+        }
+    }
+
+    @Test
+    public void dirtyPagesAreWrittenAhead() throws InterruptedException {
+        final BufferManagerImpl bm = newBufferManager(8);
+        bm.evictDirty(true);
+        for (int i = 0; i < 4; i++) {
+            increment(bm, i);
+        }
+        await(() -> countOnDisk(0) == 1 && countOnDisk(3) == 1);
+        // the pages stay in the pool and are still reported as dirty
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bm.inBufferPool(new SimplePageId(tableid, i)));
+            assertTrue(bm.isDirty(new SimplePageId(tableid, i)));
+        }
+        // a later change is written again
+        increment(bm, 0);
+        await(() -> countOnDisk(0) == 2);
+    }
+
+    @Test
+    public void noStealUnlessDirtyEvictionAllowed() throws InterruptedException {
+        BufferManagerImpl bm = newBufferManager(8);
+        for (int i = 0; i < 8; i++) {
+            increment(bm, i);
+        }
+        Thread.sleep(300);
+        assertEquals(8, pagesInPool(bm));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(0, countOnDisk(i));
+        }
+    }
+}
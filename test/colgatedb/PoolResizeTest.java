@@ -0,0 +1,188 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class PoolResizeTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 20;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private DiskManagerImpl dm;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("resizetest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(new BytePage(pid, i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void pin(BufferManagerImpl bm, int pageno) {
+        assertEquals(new BytePage(new SimplePageId(tableid, pageno), pageno),
+                bm.pinPage(new SimplePageId(tableid, pageno), pm));
+    }
+
+    private void unpin(BufferManagerImpl bm, int pageno) {
+        bm.unpinPage(new SimplePageId(tableid, pageno), false);
+    }
+
+    private int pagesInPool(BufferManagerImpl bm) {
+        int count = 0;
+        for (int i = 0; i < NUMPAGES; i++) {
+            if (bm.inBufferPool(new SimplePageId(tableid, i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void awaitPagesInPool(BufferManagerImpl bm, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pagesInPool(bm) > expected) {
+            assertTrue("timed out waiting for the pool to shrink", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(expected, pagesInPool(bm));
+    }
+
+    @Test
+    public void growAddsFramesRightAway() {
+        BufferManagerImpl bm = new BufferManagerImpl(2, dm);
+        pin(bm, 0);
+        pin(bm, 1);
+        bm.resize(4);
+        assertEquals(4, bm.getNumFrames());
+        pin(bm, 2);
+        pin(bm, 3);
+        assertEquals(4, pagesInPool(bm));
+    }
+
+    @Test
+    public void shrinkRetiresFreeFrames() {
+        BufferManagerImpl bm = new BufferManagerImpl(4, dm);
+        bm.resize(2);
+        assertEquals(2, bm.getNumFrames());
+        for (int i = 0; i < 5; i++) {
+            pin(bm, i);
+            unpin(bm, i);
+        }
+        assertEquals(2, pagesInPool(bm));
+    }
+
+    @Test
+    public void shrinkEvictsInTheBackground() throws InterruptedException {
+        BufferManagerImpl bm = new BufferManagerImpl(4, dm);
+        for (int i = 0; i < 4; i++) {
+            pin(bm, i);
+            unpin(bm, i);
+        }
+        bm.resize(1);
+        awaitPagesInPool(bm, 1);
+        assertEquals(1, bm.getStats().getFrames());
+    }
+
+    @Test
+    public void shrinkWaitsForPins() throws InterruptedException {
+        BufferManagerImpl bm = new BufferManagerImpl(4, dm);
+        for (int i = 0; i < 4; i++) {
+            pin(bm, i);
+        }
+        bm.resize(2);     // does not block although every page is pinned
+        assertEquals(2, bm.getNumFrames());
+        Thread.sleep(50);
+        assertEquals(4, pagesInPool(bm));
+        unpin(bm, 0);
+        unpin(bm, 1);
+        awaitPagesInPool(bm, 2);
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 2)));
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 3)));
+    }
+
+    @Test
+    public void growCancelsShrink() throws InterruptedException {
+        BufferManagerImpl bm = new BufferManagerImpl(4, dm);
+        for (int i = 0; i < 4; i++) {
+            pin(bm, i);
+        }
+        bm.resize(2);
+        bm.resize(4);
+        assertEquals(4, bm.getNumFrames());
+        for (int i = 0; i < 4; i++) {
+            unpin(bm, i);
+        }
+        Thread.sleep(50);
+        assertEquals(4, pagesInPool(bm));
+    }
+
+    @Test
+    public void growAfterShrinkReusesRetiredFrames() {
+        BufferManagerImpl bm = new BufferManagerImpl(4, dm);
+        bm.resize(1);
+        bm.resize(6);
+        assertEquals(6, bm.getNumFrames());
+        for (int i = 0; i < 6; i++) {
+            pin(bm, i);
+        }
+        assertEquals(6, pagesInPool(bm));
+    }
+
+    @Test
+    public void everyPolicyGrows() {
+        ReplacementPolicy[] policies = {new LruPolicy(), new ClockPolicy(), new TwoQueuePolicy()};
+        for (ReplacementPolicy policy : policies) {
+            BufferManagerImpl bm = new BufferManagerImpl(2, dm, policy);
+            bm.setOffHeap(true);
+            for (int i = 0; i < 4; i++) {
+                pin(bm, i);
+                unpin(bm, i);
+            }
+            bm.resize(6);
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < NUMPAGES; i++) {
+                    pin(bm, i);
+                    unpin(bm, i);
+                }
+            }
+            assertEquals(6, pagesInPool(bm));
+        }
+    }
+
+    @Test(expected = BufferManagerException.class)
+    public void poolCannotBeEmpty() {
+        new BufferManagerImpl(4, dm).resize(0);
+    }
+}
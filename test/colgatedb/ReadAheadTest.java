@@ -0,0 +1,128 @@
+package colgatedb;
+
+import colgatedb.DiskManagerImplTest.BytePage;
+import colgatedb.DiskManagerImplTest.BytePageMaker;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.page.SimplePageId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class ReadAheadTest {
+    private static final int PAGESIZE = 64;
+    private static final int NUMPAGES = 64;
+    private final int tableid = 0;
+    private final BytePageMaker pm = new BytePageMaker();
+    private DiskManagerImpl dm;
+    private BufferManagerImpl bm;
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = File.createTempFile("readaheadtest", ".dat");
+        dataFile.deleteOnExit();
+        dm = new DiskManagerImpl(PAGESIZE);
+        dm.addFileEntry(tableid, dataFile.getAbsolutePath());
+        for (int i = 0; i < NUMPAGES; i++) {
+            SimplePageId pid = new SimplePageId(tableid, i);
+            dm.allocatePage(pid);
+            dm.writePage(new BytePage(pid, i));
+        }
+        dm.getTotalStats().reset();
+        bm = new BufferManagerImpl(32, dm);
+        bm.setReadAhead(8);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+    }
+
+    private void awaitInPool(PageId pid) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bm.inBufferPool(pid)) {
+            assertTrue("timed out waiting for read-ahead", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private int pagesInPool() {
+        int count = 0;
+        for (int i = 0; i < NUMPAGES; i++) {
+            if (bm.inBufferPool(new SimplePageId(tableid, i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void sequentialScanIsReadInBatches() {
+        for (int i = 0; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            Page page = bm.pinPage(pid, pm);
+            assertEquals(new BytePage(pid, i), page);
+            bm.unpinPage(pid, false);
+        }
+        assertEquals(NUMPAGES, dm.getTotalStats().getPagesRead());
+        assertTrue(dm.getTotalStats().getReadCalls() < NUMPAGES / 2);
+    }
+
+    @Test
+    public void hintStartsReadAhead() throws InterruptedException {
+        bm.hintSequential(new SimplePageId(tableid, 0), pm);
+        awaitInPool(new SimplePageId(tableid, 3));
+    }
+
+    @Test
+    public void windowGrows() throws InterruptedException {
+        bm.pinPage(new SimplePageId(tableid, 0), pm);
+        bm.pinPage(new SimplePageId(tableid, 1), pm);     // first window: pages 2 to 5
+        awaitInPool(new SimplePageId(tableid, 5));
+        bm.pinPage(new SimplePageId(tableid, 2), pm);     // start of that window: pages 6 to 13
+        awaitInPool(new SimplePageId(tableid, 13));
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 14)));
+    }
+
+    @Test
+    public void randomAccessDoesNotReadAhead() throws InterruptedException {
+        int[] pagenos = {0, 5, 10, 3, 40, 20};
+        for (int pageno : pagenos) {
+            PageId pid = new SimplePageId(tableid, pageno);
+            bm.pinPage(pid, pm);
+            bm.unpinPage(pid, false);
+        }
+        Thread.sleep(100);
+        assertEquals(pagenos.length, pagesInPool());
+    }
+
+    @Test
+    public void readAheadStopsAtEndOfTable() throws InterruptedException {
+        for (int i = NUMPAGES - 4; i < NUMPAGES; i++) {
+            PageId pid = new SimplePageId(tableid, i);
+            assertEquals(new BytePage(pid, i), bm.pinPage(pid, pm));
+            bm.unpinPage(pid, false);
+        }
+        Thread.sleep(100);
+        assertEquals(4, pagesInPool());
+    }
+}
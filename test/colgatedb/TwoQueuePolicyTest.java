@@ -0,0 +1,82 @@
+package colgatedb;
+
+import colgatedb.page.SimplePageId;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class TwoQueuePolicyTest extends BufferManagerConcurrencyTest {
+
+    @Override
+    protected BufferManagerImpl newBufferManager(int numPages) {
+        return new BufferManagerImpl(numPages, dm, new TwoQueuePolicy());
+    }
+
+    private void pinAndUnpin(BufferManagerImpl bm, int pageno) {
+        SimplePageId pid = new SimplePageId(tableid, pageno);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, false);
+    }
+
+    @Test
+    public void scanDoesNotEvictHotPages() {
+        BufferManagerImpl bm = newBufferManager(8);
+        for (int i = 0; i < 10; i++) {
+            pinAndUnpin(bm, i);
+        }
+        // pages 0 and 1 were pushed out of the pool, but are remembered; using them again marks them hot
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        pinAndUnpin(bm, 0);
+        pinAndUnpin(bm, 1);
+        for (int i = 10; i < NUMPAGES; i++) {
+            pinAndUnpin(bm, i);
+        }
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 1)));
+    }
+
+    @Test
+    public void pageUsedAgainLaterIsPromoted() {
+        BufferManagerImpl bm = newBufferManager(8);
+        pinAndUnpin(bm, 0);
+        pinAndUnpin(bm, 0);     // correlated with the first use: no promotion
+        pinAndUnpin(bm, 1);
+        pinAndUnpin(bm, 2);
+        pinAndUnpin(bm, 3);
+        pinAndUnpin(bm, 1);     // used again three reads later: promoted
+        for (int i = 4; i < NUMPAGES; i++) {
+            pinAndUnpin(bm, i);
+        }
+        assertFalse(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 1)));
+    }
+
+    @Test
+    public void pagesUsedOnceLeaveFirst() {
+        BufferManagerImpl bm = newBufferManager(4);
+        for (int i = 0; i < 5; i++) {
+            pinAndUnpin(bm, i);
+        }
+        pinAndUnpin(bm, 0);     // remembered, so it joins the hot queue
+        for (int i = 0; i < 4; i++) {
+            pinAndUnpin(bm, 0);
+            pinAndUnpin(bm, 10 + i);
+        }
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 0)));
+        assertTrue(bm.inBufferPool(new SimplePageId(tableid, 13)));
+    }
+}
@@ -0,0 +1,207 @@
+package colgatedb.logging;
+
+import colgatedb.AccessManager;
+import colgatedb.Database;
+import colgatedb.page.PageId;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.Transaction;
+import colgatedb.transactions.TransactionAbortedException;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * Runs transactions through the access manager, crashes, and checks what recovery leaves on
+ * disk.  These tests use the FORCE policy; {@link NoForceRecoveryTest} runs them again with
+ * NO-FORCE, where committed pages may still be only in the buffer pool at the crash.
+ */
+public class CommitRecoveryTest extends LogTestUtility {
+
+    /**
+     * @return the commit policy the access manager should use
+     */
+    protected boolean force() {
+        return true;
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        super.setUp();
+        Database.getAccessManager().setForce(force());
+    }
+
+    @Override
+    protected void crash() throws IOException {
+        super.crash();
+        Database.getAccessManager().setForce(force());
+    }
+
+    protected Transaction begin() {
+        Transaction t = new Transaction();
+        t.start();
+        return t;
+    }
+
+    protected void write(Transaction t, PageId pid, int datum) throws TransactionAbortedException {
+        AccessManager am = Database.getAccessManager();
+        am.acquireLock(t.getId(), pid, Permissions.READ_WRITE);
+        MockPage page = (MockPage) am.pinPage(t.getId(), pid, pm);
+        page.datum = (byte) datum;
+        am.unpinPage(t.getId(), page, true);
+    }
+
+    protected int read(Transaction t, PageId pid) throws TransactionAbortedException {
+        AccessManager am = Database.getAccessManager();
+        am.acquireLock(t.getId(), pid, Permissions.READ_ONLY);
+        MockPage page = (MockPage) am.pinPage(t.getId(), pid, pm);
+        am.unpinPage(t.getId(), page, false);
+        return page.datum;
+    }
+
+    /**
+     * @return the datum of the page on disk; pages are allocated as zeroes
+     */
+    protected int onDisk(PageId pid) {
+        return ((MockPage) dm.readPage(pid, pm)).datum;
+    }
+
+    @Test
+    public void committedChangeSurvivesCrash() throws Exception {
+        Transaction t = begin();
+        write(t, pid0, 5);
+        t.commit();
+
+        crash();
+        assertEquals(5, onDisk(pid0));
+    }
+
+    @Test
+    public void stolenUncommittedChangeIsUndone() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();
+
+        Transaction t1 = begin();
+        write(t1, pid0, 7);
+        bm.flushAllPages();             // steal: the loser's change reaches disk
+        assertEquals(7, onDisk(pid0));
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+    }
+
+    @Test
+    public void unflushedUncommittedChangeIsLost() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();
+
+        Transaction t1 = begin();
+        write(t1, pid0, 9);
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+    }
+
+    @Test
+    public void abortAfterStealRestoresPage() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();
+
+        Transaction t1 = begin();
+        write(t1, pid0, 7);
+        bm.flushAllPages();
+        t1.abort();
+        assertEquals(3, onDisk(pid0));
+        assertEquals(3, read(begin(), pid0));
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+    }
+
+    @Test
+    public void readerAbortKeepsCommittedChanges() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 4);
+        t0.commit();
+
+        Transaction t1 = begin();
+        assertEquals(4, read(t1, pid0));
+        t1.abort();
+        assertEquals(4, read(begin(), pid0));
+
+        crash();
+        assertEquals(4, onDisk(pid0));
+    }
+
+    @Test
+    public void writerAbortKeepsEarlierCommittedChanges() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 4);
+        write(t0, pid1, 4);
+        t0.commit();
+
+        // t1 locks both pages for writing but only changes pid1
+        Transaction t1 = begin();
+        Database.getAccessManager().acquireLock(t1.getId(), pid0, Permissions.READ_WRITE);
+        write(t1, pid1, 8);
+        t1.abort();
+        Transaction t2 = begin();
+        assertEquals(4, read(t2, pid0));
+        assertEquals(4, read(t2, pid1));
+        t2.commit();
+
+        crash();
+        assertEquals(4, onDisk(pid0));
+        assertEquals(4, onDisk(pid1));
+    }
+
+    @Test
+    public void commitAfterCheckpointSurvivesCrash() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 2);
+        t0.commit();
+        lf.logCheckpoint();
+
+        Transaction t1 = begin();
+        write(t1, pid1, 6);
+        t1.commit();
+
+        crash();
+        assertEquals(2, onDisk(pid0));
+        assertEquals(6, onDisk(pid1));
+    }
+
+    @Test
+    public void recoveryCanBeRepeated() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 2);
+        t0.commit();
+        Transaction t1 = begin();
+        write(t1, pid1, 6);
+        bm.flushAllPages();
+
+        crash();
+        crash();
+        assertEquals(2, onDisk(pid0));
+        assertEquals(0, onDisk(pid1));
+    }
+}
@@ -0,0 +1,125 @@
+package colgatedb.logging;
+
+import colgatedb.Database;
+import colgatedb.page.Page;
+import colgatedb.transactions.Permissions;
+import colgatedb.transactions.Transaction;
+import colgatedb.transactions.TransactionId;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+public class GroupCommitTest extends LogTestUtility {
+
+    private static final int THREADS = 8;
+    private static final int COMMITS_PER_THREAD = 25;
+
+    private void beginAndCommit() throws IOException {
+        TransactionId tid = new TransactionId();
+        lf.logXactionBegin(tid);
+        lf.logCommit(tid);
+    }
+
+    @Test
+    public void commitIsDurableOnReturn() throws IOException {
+        beginAndCommit();
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());
+        assertEquals(1, lf.forces);
+    }
+
+    @Test
+    public void concurrentCommitsShareForces() throws InterruptedException {
+        assertCommitsShareForces(() -> {
+            beginAndCommit();
+            return null;
+        });
+    }
+
+    @Test
+    public void concurrentTransactionCommitsShareForces() throws InterruptedException {
+        // through Transaction.commit, so the access manager's part of the commit is included;
+        // each transaction reads a page, or the access manager would have nothing to do
+        assertCommitsShareForces(() -> {
+            Transaction t = new Transaction();
+            t.start();
+            Database.getAccessManager().acquireLock(t.getId(), pid0, Permissions.READ_ONLY);
+            Page page = Database.getAccessManager().pinPage(t.getId(), pid0, pm);
+            Database.getAccessManager().unpinPage(t.getId(), page, false);
+            t.commit();
+            return null;
+        });
+    }
+
+    private void assertCommitsShareForces(final Callable<Void> commit) throws InterruptedException {
+        lf.setGroupCommit(2000, THREADS);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    for (int j = 0; j < COMMITS_PER_THREAD; j++) {
+                        commit.call();
+                        assertTrue(lf.getDurableLsn() > 0);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());
+        assertTrue("forces: " + lf.forces, lf.forces <= THREADS * COMMITS_PER_THREAD / 2);
+    }
+
+    @Test
+    public void loneCommitWaitsAtMostTheDelay() throws IOException {
+        lf.setGroupCommit(50000, THREADS);
+        long start = System.nanoTime();
+        beginAndCommit();
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());
+    }
+
+    @Test
+    public void checkpointRecordIsDurable() throws IOException {
+        beginAndCommit();
+        lf.logCheckpoint();
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchMustBePositive() {
+        lf.setGroupCommit(0, 0);
+    }
+}
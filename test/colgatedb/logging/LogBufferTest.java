@@ -0,0 +1,161 @@
+package colgatedb.logging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+public class LogBufferTest {
+
+    private static final int CAPACITY = 64;     // small, so that records wrap around the ring
+    private File file;
+    private RandomAccessFile raf;
+    private LogBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("logbuffertest", ".dat");
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        buffer = new LogBuffer(raf.getChannel(), CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        buffer.close();
+        raf.close();
+    }
+
+    private static byte[] record(int length, int value) {
+        byte[] record = new byte[length];
+        Arrays.fill(record, (byte) value);
+        return record;
+    }
+
+    private void append(byte[] record) {
+        buffer.fill(buffer.reserve(record.length), record);
+    }
+
+    private byte[] readFile(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        raf.seek(offset);
+        raf.readFully(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void recordsWrapAroundTheRing() throws IOException {
+        buffer.reset(8);
+        long offset = 8;
+        for (int i = 0; i < 20; i++) {
+            append(record(13, i));
+            offset += 13;
+        }
+        assertEquals(offset, buffer.getReserved());
+        buffer.awaitWritten(offset);
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(record(13, i), readFile(8 + 13 * i, 13));
+        }
+    }
+
+    @Test
+    public void concurrentAppendsLandAtTheirReservations() throws Exception {
+        final int threads = 4;
+        final int perThread = 200;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long[][] starts = new long[threads][perThread];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        byte[] record = record(1 + (i % 20), id);
+                        starts[id][i] = buffer.reserve(record.length);
+                        buffer.fill(starts[id][i], record);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure.get());
+        buffer.awaitWritten(buffer.getReserved());
+        assertEquals(buffer.getReserved(), raf.length());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertArrayEquals(record(1 + (i % 20), t), readFile(starts[t][i], 1 + (i % 20)));
+            }
+        }
+    }
+
+    @Test
+    public void abandonedReservationFailsLaterFills() throws Exception {
+        append(record(8, 1));
+        long first = buffer.reserve(8);
+        final long second = buffer.reserve(8);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread later = new Thread(() -> {
+            try {
+                buffer.fill(second, record(8, 3));
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        later.start();
+        later.join(200);    // the later record waits for the earlier one to be published
+        assertTrue(later.isAlive());
+
+        buffer.abandon(new RuntimeException("appender failed"));
+        later.join(5000);
+        assertFalse("fill must not wait forever for an abandoned reservation", later.isAlive());
+        assertTrue(thrown.get() instanceof LogManagerException);
+        try {
+            buffer.awaitWritten(first + 8);
+            fail("bytes past the abandoned reservation can never be written");
+        } catch (LogManagerException e) {
+            // expected
+        }
+        buffer.awaitWritten(8);     // the record before it is still written
+        assertArrayEquals(record(8, 1), readFile(0, 8));
+    }
+
+    @Test(expected = LogManagerException.class)
+    public void recordLargerThanBufferIsRejected() {
+        buffer.reserve(CAPACITY + 1);
+    }
+}
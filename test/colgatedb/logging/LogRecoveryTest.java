@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -240,4 +241,36 @@ public class LogRecoveryTest extends LogTestUtility {
         // Check that pid0 was re-written (b/c recovery should undo tid1's modifications)
         assertEquals(afterT0, dm.readPage(pid0, pm));
     }
+
+
+    /**
+     * Log records that were never forced are lost in a crash, whether or not the log writer
+     * got to them.  A transaction whose records were all lost leaves nothing to undo.
+     * @throws IOException
+     */
+    @Test
+    public void testUnforcedTailIsLost() throws IOException {
+
+        MockPage before = new MockPage(pid0, 1);
+        MockPage after = new MockPage(pid0, 2);
+
+        lf.logXactionBegin(tid0);
+        lf.logWrite(tid0, before, after);
+        lf.logCommit(tid0);     // forced
+        long durable = lf.getCurrentLsn();
+
+        // never forced, and the page is never written
+        lf.logXactionBegin(tid1);
+        lf.logWrite(tid1, new MockPage(pid1, 1), new MockPage(pid1, 2));
+
+        crash();
+
+        // recovery found no trace of tid1, and so logged nothing for it
+        assertEquals(durable, lf.getCurrentLsn());
+        assertFalse(lf.abortedTxns.contains(tid1.getId()));
+        assertTrue(lf.getCLRs(tid1).isEmpty());
+
+        // tid0's update is redone
+        assertEquals(after, dm.readPage(pid0, pm));
+    }
 }
@@ -63,7 +63,7 @@ public class LogTestUtility {
         this.lf = new WrappedLogFileImpl(logFile);
 
         // set up the disk manager: add an entry for my fake table
-        dm = new DiskManagerImpl(MockPage.PAGESIZE);
+        dm = newDiskManager();
         dm.addFileEntry(tableId, dbFile.getAbsolutePath());
 
         bm = new BufferManagerImpl(10, dm);
@@ -76,15 +76,59 @@ public class LogTestUtility {
         Database.setLogFile(this.lf);
     }
 
+    /**
+     * Subclasses override this to give the database a different disk manager.
+     */
+    protected DiskManagerImpl newDiskManager() {
+        return new WriteAheadDiskManager();
+    }
+
     /**
      * Destroys in-memory state of database and initiate recovery protocol
      * @throws IOException
      */
     protected void crash() throws IOException {
+        // the machine dies: log records that were not forced are lost
+        lf.crash();
         resetDatabase();
         lf.recover();
     }
 
+    /**
+     * Tests write pages straight to the disk manager, around the buffer manager, so this disk
+     * manager does what the buffer manager would: it forces the log before writing a page.
+     */
+    protected static class WriteAheadDiskManager extends DiskManagerImpl {
+
+        public WriteAheadDiskManager() {
+            super(MockPage.PAGESIZE);
+        }
+
+        @Override
+        public void writePage(Page page) {
+            forceLog();
+            super.writePage(page);
+        }
+
+        @Override
+        public void writePages(List<Page> pages) {
+            forceLog();
+            super.writePages(pages);
+        }
+
+        /**
+         * Writes a page without forcing the log, e.g., to put back an image lost in a crash.
+         */
+        protected void writePageAroundLog(Page page) {
+            super.writePage(page);
+        }
+
+        private static void forceLog() {
+            LogFile lf = Database.getLogFile();
+            lf.force(lf.getCurrentLsn());
+        }
+    }
+
 
 
     /**
@@ -167,11 +211,26 @@ public class LogTestUtility {
     public class WrappedLogFileImpl extends LogFileImpl {
         List<Long> abortedTxns = new LinkedList<>();
         Map<Long, List<Page>> clrs = new HashMap<>();
+        int forces = 0;
+        Runnable afterWrite;    // if set, runs after every UPDATE record is logged
 
         public WrappedLogFileImpl(File f) throws IOException {
             super(f);
         }
 
+        @Override
+        public void logWrite(TransactionId tid, Page before, Page after) {
+            super.logWrite(tid, before, after);
+            if (afterWrite != null) {
+                afterWrite.run();
+            }
+        }
+
+        public synchronized void force() {
+            super.force();
+            forces++;
+        }
+
         public void logAbort(Long tid) throws IOException {
             super.logAbort(tid);
             abortedTxns.add(tid);
@@ -0,0 +1,226 @@
+package colgatedb.logging;
+
+import colgatedb.Database;
+import colgatedb.DiskManagerImpl;
+import colgatedb.page.Page;
+import colgatedb.page.PageId;
+import colgatedb.transactions.Transaction;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+
+/**
+ * The crash-recovery tests of {@link CommitRecoveryTest} under the NO-FORCE policy, plus checks
+ * that a commit really leaves its pages to be written later.  Here a crash also loses every
+ * page write that was not synced, since nothing else forces a NO-FORCE page to disk.
+ */
+public class NoForceRecoveryTest extends CommitRecoveryTest {
+
+    @Override
+    protected boolean force() {
+        return false;
+    }
+
+    @Override
+    protected DiskManagerImpl newDiskManager() {
+        return new SyncTrackingDiskManager();
+    }
+
+    @Override
+    protected void crash() throws IOException {
+        ((SyncTrackingDiskManager) dm).loseUnsyncedWrites();
+        super.crash();
+    }
+
+    @Test
+    public void commitDoesNotWritePages() throws Exception {
+        Transaction t = begin();
+        write(t, pid0, 5);
+        t.commit();
+        assertEquals(0, onDisk(pid0));
+        assertTrue(bm.isDirty(pid0));
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());   // the log alone makes it durable
+
+        crash();
+        assertEquals(5, onDisk(pid0));
+    }
+
+    @Test
+    public void checkpointWritesCommittedPages() throws Exception {
+        Transaction t = begin();
+        write(t, pid0, 5);
+        t.commit();
+        lf.logCheckpoint();
+        assertEquals(5, onDisk(pid0));
+    }
+
+    @Test
+    public void committedPagesSurviveLaterLoser() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();                    // pid0 stays dirty in the pool
+        Transaction t1 = begin();
+        write(t1, pid0, 9);
+        write(t1, pid1, 9);
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+        assertEquals(0, onDisk(pid1));
+    }
+
+    @Test
+    public void abortedPageSurvivesCheckpointAndCrash() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();                    // pid0 stays dirty in the pool
+        Transaction t1 = begin();
+        write(t1, pid0, 7);
+        // abort t1 without the log's rollback, so that restoring pid0 is up to the access manager
+        lf.logAbort(t1.getId().getId());
+        Database.getAccessManager().transactionComplete(t1.getId(), false);
+        assertEquals(3, onDisk(pid0));
+        lf.logCheckpoint();             // redo will start here, after t0's update
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+    }
+
+    @Test
+    public void pageWrittenDuringRollbackStaysRestored() throws Exception {
+        Transaction t0 = begin();
+        write(t0, pid0, 3);
+        t0.commit();
+        Transaction t1 = begin();
+        write(t1, pid0, 7);
+        // once the rollback has written pid0, write out whatever the pool still holds of it, as an
+        // eviction or the cleaner might
+        ((SyncTrackingDiskManager) dm).afterWrite = pid -> {
+            if (pid.equals(pid0) && bm.inBufferPool(pid0)) {
+                bm.flushPage(pid0);
+            }
+        };
+        t1.abort();
+        ((SyncTrackingDiskManager) dm).afterWrite = null;
+        assertEquals(3, onDisk(pid0));
+        assertEquals(3, read(begin(), pid0));
+
+        crash();
+        assertEquals(3, onDisk(pid0));
+    }
+
+    @Test
+    public void checkpointCannotSeparateUpdateFromDirtyPage() throws Exception {
+        // start a checkpoint between logging t's update and marking pid0 dirty, and give it
+        // time to finish; it must wait until the page is dirty, or it will not flush the page
+        final Thread[] checkpointer = new Thread[1];
+        lf.afterWrite = () -> {
+            lf.afterWrite = null;
+            checkpointer[0] = new Thread(() -> {
+                try {
+                    lf.logCheckpoint();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            checkpointer[0].start();
+            try {
+                checkpointer[0].join(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Transaction t = begin();
+        write(t, pid0, 5);
+        t.commit();
+        checkpointer[0].join();
+
+        crash();
+        assertEquals(5, onDisk(pid0));
+    }
+
+    /**
+     * A disk manager that remembers, for every page written since its table was last synced,
+     * the page's synced contents, so that a crash can put them back.
+     */
+    private class SyncTrackingDiskManager extends WriteAheadDiskManager {
+        private final Map<PageId, byte[]> synced = new HashMap<PageId, byte[]>();
+        volatile Consumer<PageId> afterWrite;     // if set, runs after each single-page write
+        private boolean inAfterWrite;
+
+        @Override
+        public void writePage(Page page) {
+            remember(page.getId());
+            super.writePage(page);
+            Consumer<PageId> hook = afterWrite;
+            if (hook != null && !inAfterWrite) {
+                inAfterWrite = true;
+                try {
+                    hook.accept(page.getId());
+                } finally {
+                    inAfterWrite = false;
+                }
+            }
+        }
+
+        @Override
+        public void writePages(List<Page> pages) {
+            for (Page page : pages) {
+                remember(page.getId());
+            }
+            super.writePages(pages);
+        }
+
+        @Override
+        public void sync(int tableid) {
+            super.sync(tableid);
+            synchronized (synced) {
+                Iterator<PageId> iter = synced.keySet().iterator();
+                while (iter.hasNext()) {
+                    if (iter.next().getTableId() == tableid) {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        void loseUnsyncedWrites() {
+            synchronized (synced) {
+                for (Map.Entry<PageId, byte[]> entry : synced.entrySet()) {
+                    writePageAroundLog(pm.makePage(entry.getKey(), entry.getValue()));
+                }
+                synced.clear();
+            }
+        }
+
+        private void remember(PageId pid) {
+            synchronized (synced) {
+                if (!synced.containsKey(pid)) {
+                    synced.put(pid, readPage(pid, pm).getPageData());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package colgatedb.logging;
+
+import colgatedb.BufferManagerImpl;
+import colgatedb.DiskManagerImpl;
+import colgatedb.page.SimplePageId;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * ColgateDB
+ * @author Michael Hay mhay@colgate.edu
+ * <p>
+ * ColgateDB was developed by Michael Hay but borrows considerably from past
+ * efforts including SimpleDB (developed by Sam Madden at MIT) and its predecessor
+ * Minibase (developed at U. of Wisconsin by Raghu Ramakrishnan).
+ * <p>
+ * The contents of this file are either wholly the creation of Michael Hay or are
+ * a significant adaptation of code from the SimpleDB project.  A number of
+ * substantive changes have been made to meet the pedagogical goals of the cosc460
+ * course at Colgate.  If this file contains remnants from SimpleDB, we are
+ * grateful for Sam's permission to use and adapt his materials.
+ */
+public class PageLsnTest extends LogTestUtility {
+
+    /**
+     * These tests count the forces the buffer manager makes itself, so its writes must not
+     * force the log on their own.
+     */
+    @Override
+    protected DiskManagerImpl newDiskManager() {
+        return new DiskManagerImpl(MockPage.PAGESIZE);
+    }
+
+    private void pinAndUnpin(BufferManagerImpl bm, int pageno, boolean isDirty) {
+        SimplePageId pid = new SimplePageId(0, pageno);
+        bm.pinPage(pid, pm);
+        bm.unpinPage(pid, isDirty);
+    }
+
+    @Test
+    public void forceOnlyWhenNotDurable() throws IOException {
+        assertEquals(0, lf.getCurrentLsn());
+        lf.logXactionBegin(tid0);
+        long lsn = lf.getCurrentLsn();
+        assertTrue(lsn > lf.getDurableLsn());
+        lf.force(lsn);
+        assertEquals(1, lf.forces);
+        assertEquals(lsn, lf.getDurableLsn());
+        lf.force(lsn);
+        assertEquals(1, lf.forces);
+    }
+
+    @Test
+    public void evictingCleanPagesDoesNotForce() {
+        for (int i = 2; i < 20; i++) {
+            dm.allocatePage(new SimplePageId(0, i));
+        }
+        BufferManagerImpl bm = new BufferManagerImpl(2, dm);
+        for (int i = 0; i < 20; i++) {
+            pinAndUnpin(bm, i, false);
+        }
+        assertEquals(0, lf.forces);
+    }
+
+    @Test
+    public void evictionForcesUpToPageLsn() throws IOException {
+        dm.allocatePage(new SimplePageId(0, 2));
+        BufferManagerImpl bm = new BufferManagerImpl(1, dm);
+        bm.evictDirty(true);
+
+        lf.logXactionBegin(tid0);
+        lf.logWrite(tid0, new MockPage(pid0, 0), new MockPage(pid0, 1));
+        pinAndUnpin(bm, 0, true);
+        lf.force();
+        lf.logXactionBegin(tid1);   // not durable, but not needed to write page 0 either
+        pinAndUnpin(bm, 1, false);
+        assertEquals(1, lf.forces);
+
+        lf.logWrite(tid1, new MockPage(pid1, 0), new MockPage(pid1, 1));
+        pinAndUnpin(bm, 1, true);
+        pinAndUnpin(bm, 2, false);
+        assertEquals(2, lf.forces);
+        assertEquals(lf.getCurrentLsn(), lf.getDurableLsn());
+    }
+}